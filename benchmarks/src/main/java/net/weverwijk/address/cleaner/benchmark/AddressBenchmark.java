@@ -0,0 +1,50 @@
+package net.weverwijk.address.cleaner.benchmark;
+
+import net.weverwijk.address.cleaner.Address;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AddressBenchmark {
+  private String singleHouseNumber = "1ste Eikenlaan 31a";
+  private String multiHouseNumber = "Eikenlaan 31 - 33";
+  private String city = "Den Haag";
+  private Address description = new Address(null, null, null, "Milhezerweg", null, null, "Milhezerweg 55b te Deurne");
+  private Address candidate = new Address("5751AA", "Deurne", "Deurne", "Milhezerweg", null, null);
+  private Address input = new Address("5751 AA", "deurne", null, "Milhezerwg", null, null);
+
+  @Benchmark
+  public Address constructSingleHouseNumber() {
+    return new Address(null, city, null, singleHouseNumber, null, null);
+  }
+
+  @Benchmark
+  public Address constructMultiHouseNumber() {
+    return new Address(null, city, null, multiHouseNumber, null, null);
+  }
+
+  @Benchmark
+  public Address fillHouseNumberFromDescription() {
+    description.fillHouseNumberFromDescription();
+    return description;
+  }
+
+  @Benchmark
+  public int levenshteinDistance() {
+    return candidate.getLevenshteinDistance(input);
+  }
+}
@@ -0,0 +1,39 @@
+package net.weverwijk.address.cleaner.benchmark;
+
+import net.weverwijk.address.cleaner.Address;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Splitting house numbers off the street: the scanner in Address against the old regular expressions.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HouseNumberParsingBenchmark {
+  @Param({"1ste Eikenlaan 31a", "Eikenlaan 31a en 33b", "Burgemeester van Nispen tot Sevenaerstraat"})
+  private String street;
+
+  @Benchmark
+  public Address scanner() {
+    return new Address(null, null, null, street, null, "-2");
+  }
+
+  @Benchmark
+  public RegexHouseNumbers regex() {
+    return new RegexHouseNumbers(street, "-2");
+  }
+}
@@ -0,0 +1,48 @@
+package net.weverwijk.address.cleaner.benchmark;
+
+import net.weverwijk.address.cleaner.PostcodeCheck;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class LoadAddressesBenchmark {
+  @Param({"100000"})
+  private int rows;
+
+  @Param({"1", "4"})
+  private int indexingThreads;
+
+  private File csv;
+
+  @Setup
+  public void setup() throws IOException {
+    csv = new SyntheticPostcodes(rows, 42).writeCsv();
+  }
+
+  @Benchmark
+  public PostcodeCheck loadAddresses() throws IOException {
+    try (PostcodeCheck postcodeCheck = new PostcodeCheck()) {
+      postcodeCheck.getIndexSettings().setIndexingThreads(indexingThreads);
+      postcodeCheck.loadAddresses(csv.getPath());
+      return postcodeCheck;
+    }
+  }
+}
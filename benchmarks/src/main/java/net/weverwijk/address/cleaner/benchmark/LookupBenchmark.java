@@ -0,0 +1,106 @@
+package net.weverwijk.address.cleaner.benchmark;
+
+import net.weverwijk.address.cleaner.Address;
+import net.weverwijk.address.cleaner.PostcodeCheck;
+import net.weverwijk.address.cleaner.QueryCascade;
+import org.apache.lucene.queryparser.classic.ParseException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lookups against an index of synthetic postcodes, for clean (postcode and house number), dirty (typos, no postcode)
+ * and description-only inputs.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LookupBenchmark {
+
+  @State(Scope.Benchmark)
+  public static class Index {
+    @Param({"100000"})
+    private int rows;
+
+    @Param({"clean", "dirty", "description"})
+    private String input;
+
+    @Param({"false", "true"})
+    private boolean compactSchema;
+
+    @Param({"false", "true"})
+    private boolean cascade;
+
+    @Param({"false", "true"})
+    private boolean addressTable;
+
+    private PostcodeCheck postcodeCheck;
+    private List<Address> inputs;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+      SyntheticPostcodes postcodes = new SyntheticPostcodes(rows, 42);
+      postcodeCheck = new PostcodeCheck();
+      postcodeCheck.getIndexSettings().setCompactSchema(compactSchema);
+      postcodeCheck.getIndexSettings().setAddressTable(addressTable);
+      if (cascade) {
+        postcodeCheck.setQueryCascade(new QueryCascade());
+      }
+      postcodeCheck.loadAddresses(postcodes.writeCsv().getPath());
+      switch (input) {
+        case "clean":
+          inputs = postcodes.cleanInputs(10000);
+          break;
+        case "dirty":
+          inputs = postcodes.dirtyInputs(10000);
+          break;
+        default:
+          inputs = postcodes.descriptionInputs(10000);
+      }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+      postcodeCheck.close();
+    }
+  }
+
+  @State(Scope.Thread)
+  public static class Cursor {
+    private int next;
+
+    Address next(Index index) {
+      next = (next + 1) % index.inputs.size();
+      return index.inputs.get(next);
+    }
+  }
+
+  @Benchmark
+  @Threads(1)
+  public Address getAddress(Index index, Cursor cursor) throws IOException, ParseException {
+    return index.postcodeCheck.getAddress(cursor.next(index));
+  }
+
+  @Benchmark
+  @Threads(Threads.MAX)
+  public Address getAddressMultiThreaded(Index index, Cursor cursor) throws IOException, ParseException {
+    return index.postcodeCheck.getAddress(cursor.next(index));
+  }
+}
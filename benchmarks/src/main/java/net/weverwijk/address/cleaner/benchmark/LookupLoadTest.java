@@ -0,0 +1,160 @@
+package net.weverwijk.address.cleaner.benchmark;
+
+import net.weverwijk.address.cleaner.Address;
+import net.weverwijk.address.cleaner.AddressLookupServer;
+import net.weverwijk.address.cleaner.LookupServerSettings;
+import net.weverwijk.address.cleaner.PostcodeCheck;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Closed loop load test of the lookup service: every client posts single lookups to /address as fast as it
+ * gets answers, then the latency percentiles and the throughput are printed. Without a url an embedded server on
+ * synthetic postcodes is started.
+ * <p>
+ * Usage: {@code LookupLoadTest [clients] [requests per client] [url]}, with {@code -Dinput=clean|dirty|description}
+ * choosing the kind of lookups (default dirty).
+ */
+public class LookupLoadTest {
+
+  public static void main(String[] args) throws Exception {
+    // before the embedded server is created, see AddressLookupServer
+    if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+      System.setProperty("sun.net.httpserver.nodelay", "true");
+    }
+    int clients = args.length > 0 ? Integer.parseInt(args[0]) : 16;
+    int requests = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+    SyntheticPostcodes postcodes = new SyntheticPostcodes(100000, 42);
+
+    PostcodeCheck postcodeCheck = null;
+    AddressLookupServer server = null;
+    URL url;
+    if (args.length > 2) {
+      url = new URL(args[2]);
+    } else {
+      postcodeCheck = new PostcodeCheck();
+      postcodeCheck.loadAddresses(postcodes.writeCsv().getPath());
+      LookupServerSettings settings = new LookupServerSettings();
+      settings.setPort(0);
+      settings.setBatchWindowMicros(Long.getLong("batchWindowMicros", settings.getBatchWindowMicros()));
+      settings.setBatchSize(Integer.getInteger("batchSize", settings.getBatchSize()));
+      server = new AddressLookupServer(postcodeCheck, settings);
+      server.start();
+      url = new URL("http://localhost:" + server.getPort() + "/address");
+    }
+
+    try {
+      List<Address> inputs;
+      switch (System.getProperty("input", "dirty")) {
+        case "clean":
+          inputs = postcodes.cleanInputs(10000);
+          break;
+        case "description":
+          inputs = postcodes.descriptionInputs(10000);
+          break;
+        default:
+          inputs = postcodes.dirtyInputs(10000);
+      }
+      List<String> bodies = new ArrayList<>();
+      for (Address address : inputs) {
+        bodies.add(json(address));
+      }
+      run(url, bodies, clients, requests / 10);
+      long start = System.nanoTime();
+      long[] latencies = run(url, bodies, clients, requests);
+      long elapsed = System.nanoTime() - start;
+      Arrays.sort(latencies);
+      System.out.printf("%d clients, %d requests: p50 %d us, p99 %d us, max %d us, %.0f requests/s%n",
+          clients, latencies.length, percentile(latencies, 50), percentile(latencies, 99),
+          TimeUnit.NANOSECONDS.toMicros(latencies[latencies.length - 1]),
+          latencies.length * 1e9 / elapsed);
+    } finally {
+      if (server != null) {
+        server.close();
+        postcodeCheck.close();
+      }
+    }
+  }
+
+  private static String json(Address address) {
+    StringBuilder json = new StringBuilder("{");
+    String[] names = {"postcode", "street", "houseNumber", "city", "description"};
+    String[] values = {address.getPostcode(), address.getStreet(), address.getHouseNumber(), address.getCity(),
+        address.getDescription()};
+    for (int i = 0; i < names.length; i++) {
+      if (values[i] != null) {
+        json.append(json.length() > 1 ? "," : "").append('"').append(names[i]).append("\":\"").append(values[i]).append('"');
+      }
+    }
+    return json.append('}').toString();
+  }
+
+  private static long percentile(long[] sorted, int percentile) {
+    return TimeUnit.NANOSECONDS.toMicros(sorted[(sorted.length - 1) * percentile / 100]);
+  }
+
+  private static long[] run(final URL url, final List<String> bodies, int clients, final int requests)
+      throws Exception {
+    ExecutorService executor = Executors.newFixedThreadPool(clients);
+    try {
+      List<Future<long[]>> results = new ArrayList<>();
+      for (int client = 0; client < clients; client++) {
+        final int offset = client * requests;
+        results.add(executor.submit(new Callable<long[]>() {
+          @Override
+          public long[] call() throws IOException {
+            long[] latencies = new long[requests];
+            for (int i = 0; i < requests; i++) {
+              long start = System.nanoTime();
+              post(url, bodies.get((offset + i) % bodies.size()));
+              latencies[i] = System.nanoTime() - start;
+            }
+            return latencies;
+          }
+        }));
+      }
+      long[] all = new long[clients * requests];
+      for (int client = 0; client < clients; client++) {
+        System.arraycopy(results.get(client).get(), 0, all, client * requests, requests);
+      }
+      return all;
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private static void post(URL url, String body) throws IOException {
+    HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+    connection.setRequestMethod("POST");
+    connection.setDoOutput(true);
+    try (OutputStream out = connection.getOutputStream()) {
+      out.write(body.getBytes(StandardCharsets.UTF_8));
+    }
+    int status = connection.getResponseCode();
+    if (status != 200 && status != 404) {
+      throw new IOException("unexpected status " + status);
+    }
+    InputStream in = status == 200 ? connection.getInputStream() : connection.getErrorStream();
+    try {
+      byte[] buffer = new byte[1024];
+      while (in.read(buffer) != -1) {
+        // drain so the connection can be reused
+      }
+    } finally {
+      in.close();
+    }
+  }
+}
@@ -0,0 +1,42 @@
+package net.weverwijk.address.cleaner.benchmark;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The regular expression based house number split that Address used before its hand written scanner, kept as a
+ * baseline for {@link HouseNumberParsingBenchmark}.
+ */
+public class RegexHouseNumbers {
+  private static final Pattern SINGLE_HOUSE_NUMBER_PATTERN_AT_END_OF_LINE = Pattern.compile("([0-9]+)([a-zA-Z]?)$");
+  private static final Pattern MULTI_HOUSE_NUMBER_PATTERN_AT_END_OF_LINE = Pattern.compile("([0-9]*[a-zA-Z]?)( en |en| - |-| & |&)([0-9]*[a-zA-Z]?)$");
+
+  public String street;
+  public String houseNumber;
+  public String houseNumberAffix;
+
+  public RegexHouseNumbers(String street, String houseNumberAffix) {
+    this.street = street.trim();
+    this.houseNumberAffix = houseNumberAffix != null ? houseNumberAffix.trim().replaceFirst("^[/+-]", "") : null;
+    cleanupMultiHouseNumbers();
+    cleanupSingleHouseNumber();
+  }
+
+  private void cleanupMultiHouseNumbers() {
+    Matcher m = MULTI_HOUSE_NUMBER_PATTERN_AT_END_OF_LINE.matcher(street);
+    if (m.find()) {
+      street = street.replace(m.group(0), "").trim();
+      houseNumber = m.group(1);
+      houseNumberAffix = m.group(3);
+    }
+  }
+
+  private void cleanupSingleHouseNumber() {
+    Matcher m = SINGLE_HOUSE_NUMBER_PATTERN_AT_END_OF_LINE.matcher(street);
+    if (m.find()) {
+      street = street.replace(m.group(0), "").trim();
+      houseNumber = m.group(1);
+      houseNumberAffix = m.group(2);
+    }
+  }
+}
@@ -0,0 +1,143 @@
+package net.weverwijk.address.cleaner.benchmark;
+
+import au.com.bytecode.opencsv.CSVWriter;
+import net.weverwijk.address.cleaner.Address;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Generates a reproducible postcode data set in the csv layout read by PostcodeCheck.loadAddresses, plus clean,
+ * dirty and description-only inputs that match it. The same seed always gives the same rows.
+ */
+public class SyntheticPostcodes {
+  public static final String[] HEADER = {"postcode", "city", "municipality", "street", "numbertype", "minnumber", "maxnumber"};
+
+  private static final String[] STREET_NAMES = {"Dorp", "Kerk", "Eiken", "Beuken", "Molen", "Wilhelmina", "Juliana",
+      "Oranje", "Berken", "Linden", "Esdoorn", "School", "Stations", "Markt", "Haven", "Nieuwe", "Oude", "Prins Hendrik",
+      "Burgemeester de Vries", "Van Gogh", "Rembrandt", "Vondel", "Spoor", "Kastanje", "Meidoorn", "Heren", "Keizers",
+      "Prinsen", "Brouwers", "Smeden", "Vissers", "Bakkers", "Zuider", "Noorder", "Wester", "Ooster", "Tuin", "Park",
+      "Sport", "Dijk", "Polder", "Akker", "Weide", "Heide", "Bos", "Duin", "Zee", "Rivier", "Kanaal", "Sluis"};
+  private static final String[] STREET_TYPES = {"straat", "laan", "weg", "plein", "gracht", "kade", "singel", "dreef", "hof", "pad"};
+  private static final String[] CITIES = {"Amsterdam", "Rotterdam", "'s-Gravenhage", "Utrecht", "Eindhoven", "Groningen",
+      "Tilburg", "Almere", "Breda", "Nijmegen", "Apeldoorn", "Haarlem", "Arnhem", "Enschede", "Amersfoort", "Zaandam",
+      "'s-Hertogenbosch", "Zwolle", "Leiden", "Maastricht", "Dordrecht", "Ede", "Alphen aan den Rijn", "Leeuwarden",
+      "Alkmaar", "Emmen", "Delft", "Venlo", "Deventer", "Sittard", "Helmond", "Oss", "Hilversum", "Heerlen", "Deurne",
+      "Hoorn", "Gouda", "Purmerend", "Vlaardingen", "Roosendaal"};
+  private static final String[] NUMBER_TYPES = {"odd", "even", "mixed"};
+
+  private final List<String[]> rows;
+  private final Random random;
+
+  public SyntheticPostcodes(int rowCount, long seed) {
+    this.random = new Random(seed);
+    this.rows = generate(rowCount);
+  }
+
+  private List<String[]> generate(int rowCount) {
+    List<String[]> result = new ArrayList<>(rowCount);
+    int postcodeDigits = 1000;
+    int letters = 0;
+    while (result.size() < rowCount) {
+      String city = CITIES[random.nextInt(CITIES.length)];
+      String street = STREET_NAMES[random.nextInt(STREET_NAMES.length)] + STREET_TYPES[random.nextInt(STREET_TYPES.length)];
+      int segments = 1 + random.nextInt(4);
+      int number = 1;
+      for (int segment = 0; segment < segments && result.size() < rowCount; segment++) {
+        String postcode = postcodeDigits + "" + (char) ('A' + letters / 26) + (char) ('A' + letters % 26);
+        if (++letters == 676) {
+          letters = 0;
+          postcodeDigits++;
+        }
+        String numberType = NUMBER_TYPES[random.nextInt(NUMBER_TYPES.length)];
+        int maxNumber = number + 2 * (1 + random.nextInt(30));
+        result.add(new String[]{postcode, city, city, street, numberType, String.valueOf(number), String.valueOf(maxNumber)});
+        number = maxNumber + 1;
+      }
+    }
+    return result;
+  }
+
+  public List<String[]> getRows() {
+    return rows;
+  }
+
+  public File writeCsv() throws IOException {
+    File file = File.createTempFile("postcodes-", ".csv");
+    file.deleteOnExit();
+    try (CSVWriter writer = new CSVWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF-8"), ';', '"')) {
+      writer.writeNext(HEADER);
+      for (String[] row : rows) {
+        writer.writeNext(row);
+      }
+    }
+    return file;
+  }
+
+  /**
+   * Postcode plus a house number that falls in the row.
+   */
+  public List<Address> cleanInputs(int count) {
+    List<Address> result = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      String[] row = randomRow();
+      result.add(new Address(row[0], null, null, null, String.valueOf(houseNumber(row)), null));
+    }
+    return result;
+  }
+
+  /**
+   * No postcode, a typo in the street, the house number glued to the street and the city in lower case.
+   */
+  public List<Address> dirtyInputs(int count) {
+    List<Address> result = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      String[] row = randomRow();
+      result.add(new Address(null, row[1].toLowerCase(), null, typo(row[3]) + " " + houseNumber(row) + "a", null, null));
+    }
+    return result;
+  }
+
+  /**
+   * Only a free text description such as "Kerkstraat 12 te Utrecht": a street, a house number of its range and the
+   * city, spelled as in the data; all other fields are empty.
+   */
+  public List<Address> descriptionInputs(int count) {
+    List<Address> result = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      String[] row = randomRow();
+      result.add(new Address(null, null, null, null, null, null, row[3] + " " + houseNumber(row) + " te " + row[1]));
+    }
+    return result;
+  }
+
+  private String[] randomRow() {
+    return rows.get(random.nextInt(rows.size()));
+  }
+
+  private int houseNumber(String[] row) {
+    int min = Integer.parseInt(row[5]);
+    int max = Integer.parseInt(row[6]);
+    int number = min + random.nextInt(max - min + 1);
+    if ("odd".equals(row[4]) && number % 2 == 0) {
+      number = number == max ? number - 1 : number + 1;
+    } else if ("even".equals(row[4]) && number % 2 == 1) {
+      number = number == max ? number - 1 : number + 1;
+    }
+    return number;
+  }
+
+  private String typo(String street) {
+    int position = 1 + random.nextInt(street.length() - 2);
+    char[] chars = street.toCharArray();
+    char swap = chars[position];
+    chars[position] = chars[position + 1];
+    chars[position + 1] = swap;
+    return new String(chars);
+  }
+}
@@ -4,15 +4,16 @@ import lombok.Data;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.lucene.document.Document;
 
-import java.util.HashMap;
+import java.io.Serializable;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 @Data
-public class Address {
+public class Address implements Serializable {
+  private static final long serialVersionUID = 1L;
   private static final Pattern SINGLE_HOUSE_NUMBER_PATTERN = Pattern.compile("([0-9]+)([a-zA-Z]?)");
-  private static final Pattern SINGLE_HOUSE_NUMBER_PATTERN_AT_END_OF_LINE = Pattern.compile("([0-9]+)([a-zA-Z]?)$");
-  private static final Pattern MULTI_HOUSE_NUMBER_PATTERN_AT_END_OF_LINE = Pattern.compile("([0-9]*[a-zA-Z]?)( en |en| - |-| & |&)([0-9]*[a-zA-Z]?)$");
+  // separators between two house numbers at the end of a street, as in "Eikenlaan 31 en 33"
+  private static final String[] HOUSE_NUMBER_SEPARATORS = {" en ", "en", " - ", "-", " & ", "&"};
 
   private String postcode;
   private String city;
@@ -21,6 +22,7 @@ public class Address {
   private String houseNumber;
   private String houseNumberAffix;
   private String description;
+  private MatchSource matchSource;
 
 
   public Address(String postcode, String city, String municipality, String street, String houseNumber, String houseNumberAffix, String description) {
@@ -30,21 +32,15 @@ public class Address {
 
   public Address(String postcode, String city, String municipality, String street, String houseNumber, String houseNumberAffix) {
     this.postcode = StringUtils.isNotEmpty(postcode) ? postcode.trim() : null;
-    this.city = StringUtils.isNotEmpty(city) ? checkAndReplaceWithSynonym(city.trim()) : null;
-    this.municipality = StringUtils.isNotEmpty(municipality) ? checkAndReplaceWithSynonym(municipality.trim()) : null;
+    AddressSynonyms synonyms = AddressSynonyms.current();
+    this.city = StringUtils.isNotEmpty(city) ? synonyms.normalizePlace(city.trim()) : null;
+    this.municipality = StringUtils.isNotEmpty(municipality) ? synonyms.normalizePlace(municipality.trim()) : null;
     this.street = StringUtils.isNotEmpty(street) ? street.trim() : null;
     this.houseNumber = StringUtils.isNotEmpty(houseNumber) ? houseNumber.trim() : null;
-    this.houseNumberAffix = StringUtils.isNotEmpty(houseNumberAffix) ? houseNumberAffix.trim().replaceFirst("^[/+-]", "") : null;
+    this.houseNumberAffix = StringUtils.isNotEmpty(houseNumberAffix) ? stripAffixSeparator(houseNumberAffix.trim()) : null;
 
     this.cleanUpHouseNumbers();
-  }
-
-  private String checkAndReplaceWithSynonym(String city) {
-    if (city == null) { return city;}
-    if (Address.citySynonyms.containsKey(city.toLowerCase())) {
-      return Address.citySynonyms.get(city);
-    }
-    return city;
+    this.street = synonyms.normalizeStreet(this.street);
   }
 
   public Address(Document fields) {
@@ -54,6 +50,32 @@ public class Address {
     this.municipality = fields.get("municipality");
   }
 
+  public Address(Address other) {
+    this.postcode = other.postcode;
+    this.city = other.city;
+    this.municipality = other.municipality;
+    this.street = other.street;
+    this.houseNumber = other.houseNumber;
+    this.houseNumberAffix = other.houseNumberAffix;
+    this.description = other.description;
+    this.matchSource = other.matchSource;
+  }
+
+  private Address() {
+  }
+
+  /**
+   * Creates an address from values that are already clean, skipping the synonym and house number cleanup.
+   */
+  static Address fromIndex(String postcode, String city, String municipality, String street) {
+    Address address = new Address();
+    address.postcode = postcode;
+    address.city = city;
+    address.municipality = municipality;
+    address.street = street;
+    return address;
+  }
+
   private void cleanUpHouseNumbers() {
     if (StringUtils.isEmpty(this.getHouseNumber()) && StringUtils.isNotEmpty(this.getStreet())) {
       cleanupMultiHouseNumbers();
@@ -61,22 +83,84 @@ public class Address {
     }
   }
 
+  /**
+   * Splits "street number separator number" at the end of the street, scanning backwards. The first number needs
+   * at least one digit; both may end in a single letter, as in "Eikenlaan 31a en 33b".
+   */
   protected void cleanupMultiHouseNumbers() {
-    Matcher m = MULTI_HOUSE_NUMBER_PATTERN_AT_END_OF_LINE.matcher(street);
-    if (m.find()) {
-      street = street.replace(m.group(0), "").trim();
-      houseNumber = m.group(1);
-      houseNumberAffix = m.group(3);
+    int length = street.length();
+    int bestStart = -1;
+    int bestSeparatorStart = 0;
+    int bestSecondStart = 0;
+    // the second number may end in a letter, or the last letter belongs to the separator, as in "31en"
+    for (int option = 0; option < 2; option++) {
+      int secondStart;
+      if (option == 0) {
+        if (length == 0 || !isLetter(street.charAt(length - 1))) {
+          continue;
+        }
+        secondStart = skipDigits(street, length - 1);
+      } else {
+        secondStart = skipDigits(street, length);
+      }
+      for (String separator : HOUSE_NUMBER_SEPARATORS) {
+        int separatorStart = secondStart - separator.length();
+        if (separatorStart < 1 || !street.startsWith(separator, separatorStart)) {
+          continue;
+        }
+        int firstEnd = isLetter(street.charAt(separatorStart - 1)) ? separatorStart - 1 : separatorStart;
+        int firstStart = skipDigits(street, firstEnd);
+        if (firstStart < firstEnd && (bestStart < 0 || firstStart < bestStart)) {
+          bestStart = firstStart;
+          bestSeparatorStart = separatorStart;
+          bestSecondStart = secondStart;
+        }
+      }
+    }
+    if (bestStart >= 0) {
+      houseNumber = street.substring(bestStart, bestSeparatorStart);
+      houseNumberAffix = bestSecondStart == length ? "" : street.substring(bestSecondStart);
+      street = streetBefore(bestStart);
     }
   }
 
   private void cleanupSingleHouseNumber() {
-    Matcher m = SINGLE_HOUSE_NUMBER_PATTERN_AT_END_OF_LINE.matcher(street);
-    if (m.find()) {
-      street = street.replace(m.group(0), "").trim();
-      houseNumber = m.group(1);
-      houseNumberAffix = m.group(2);
+    int length = street.length();
+    if (length == 0) {
+      return;
     }
+    int digitsEnd = isLetter(street.charAt(length - 1)) ? length - 1 : length;
+    int digitsStart = skipDigits(street, digitsEnd);
+    if (digitsStart < digitsEnd) {
+      houseNumber = street.substring(digitsStart, digitsEnd);
+      houseNumberAffix = digitsEnd == length ? "" : street.substring(digitsEnd);
+      street = streetBefore(digitsStart);
+    }
+  }
+
+  private String streetBefore(int end) {
+    while (end > 0 && street.charAt(end - 1) <= ' ') {
+      end--;
+    }
+    return street.substring(0, end);
+  }
+
+  private static int skipDigits(String value, int end) {
+    while (end > 0 && value.charAt(end - 1) >= '0' && value.charAt(end - 1) <= '9') {
+      end--;
+    }
+    return end;
+  }
+
+  private static boolean isLetter(char c) {
+    return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+  }
+
+  private static String stripAffixSeparator(String affix) {
+    if (!affix.isEmpty() && "/+-".indexOf(affix.charAt(0)) >= 0) {
+      return affix.substring(1);
+    }
+    return affix;
   }
 
   public int getLevenshteinDistance(Address compareTo) {
@@ -120,39 +204,4 @@ public class Address {
       }
     }
   }
-
-  private static HashMap<String,String> citySynonyms = new HashMap<>();
-
-  static {
-    citySynonyms.put("den haag", "'s-Gravenhage");
-    citySynonyms.put("denhaag", "'s-Gravenhage");
-    citySynonyms.put("leidseveen den haag", "'s-Gravenhage");
-    citySynonyms.put("den haag/ypenburg", "'s-Gravenhage");
-    citySynonyms.put("loosduinen/den haag", "'s-Gravenhage");
-    citySynonyms.put("den haag-leidschenveen", "'s-Gravenhage");
-    citySynonyms.put("' hertogenbosch", "'s-Hertogenbosch");
-    citySynonyms.put("' s hertogenbosch", "'s-Hertogenbosch");
-    citySynonyms.put("'-hertogenbosch", "'s-Hertogenbosch");
-    citySynonyms.put("'hertogenbosch", "'s-Hertogenbosch");
-    citySynonyms.put("'s hertogenbosch", "'s-Hertogenbosch");
-    citySynonyms.put("'s- hertogenbosch", "'s-Hertogenbosch");
-    citySynonyms.put("'s--hertogenbosch", "'s-Hertogenbosch");
-    citySynonyms.put("'s-bosch", "'s-Hertogenbosch");
-    citySynonyms.put("'s-hertgoenbosch", "'s-Hertogenbosch");
-    citySynonyms.put("'s-hertogenbosch", "'s-Hertogenbosch");
-    citySynonyms.put("'s-hertogrnbosch", "'s-Hertogenbosch");
-    citySynonyms.put("'s-hertogtenbosch", "'s-Hertogenbosch");
-    citySynonyms.put("'s-hetogenbosch", "'s-Hertogenbosch");
-    citySynonyms.put("'shertogenbosch", "'s-Hertogenbosch");
-    citySynonyms.put("'s hertogenbosch", "'s-Hertogenbosch");
-    citySynonyms.put("'s-hertogenbosch", "'s-Hertogenbosch");
-    citySynonyms.put("den bosch", "'s-Hertogenbosch");
-    citySynonyms.put("s hertogenbosch", "'s-Hertogenbosch");
-    citySynonyms.put("s' hertogenbosch", "'s-Hertogenbosch");
-    citySynonyms.put("s'-hertogenbosch", "'s-Hertogenbosch");
-    citySynonyms.put("s'hertogenbosch", "'s-Hertogenbosch");
-    citySynonyms.put("s-hertogenbosch", "'s-Hertogenbosch");
-    citySynonyms.put("`s-hertogenbosch", "'s-Hertogenbosch");
-  }
-
 }
@@ -0,0 +1,175 @@
+package net.weverwijk.address.cleaner;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded LRU cache of lookup results, keyed on the cleaned input address. Entries expire after a fixed time and
+ * are dropped when the index is reloaded. The cache is split into independently locked segments, each holding an
+ * equal share of the maximum size, so concurrent lookups rarely contend. Addresses are copied on the way in and out,
+ * callers may modify what they get back.
+ */
+public class AddressCache {
+  private static final int MAX_SEGMENTS = 16;
+  private static final Address NOT_FOUND = new Address(null, null, null, null, null, null);
+
+  private final Segment[] segments;
+  private final long expireAfterWriteNanos;
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+  private final AtomicLong evictions = new AtomicLong();
+  private final AtomicLong epoch = new AtomicLong();
+
+  public AddressCache(int maxSize, long expireAfterWrite, TimeUnit unit) {
+    if (maxSize < 1) {
+      throw new IllegalArgumentException("maxSize must be positive");
+    }
+    int segmentCount = Math.min(MAX_SEGMENTS, maxSize);
+    segments = new Segment[segmentCount];
+    for (int i = 0; i < segmentCount; i++) {
+      // spread the remainder over the first segments so the sizes add up to exactly maxSize
+      segments[i] = new Segment(maxSize / segmentCount + (i < maxSize % segmentCount ? 1 : 0));
+    }
+    expireAfterWriteNanos = unit.toNanos(expireAfterWrite);
+  }
+
+  /**
+   * Returns a copy of the cached result; {@code found} is false when the address is not in the cache.
+   */
+  Lookup get(Address address) {
+    Key key = new Key(address);
+    Segment segment = segmentFor(key);
+    Entry entry;
+    synchronized (segment) {
+      entry = segment.get(key);
+      if (entry != null && System.nanoTime() - entry.written > expireAfterWriteNanos) {
+        segment.remove(key);
+        evictions.incrementAndGet();
+        entry = null;
+      }
+    }
+    if (entry == null) {
+      misses.incrementAndGet();
+      return new Lookup(false, null, epoch.get());
+    }
+    hits.incrementAndGet();
+    return new Lookup(true, entry.address == NOT_FOUND ? null : new Address(entry.address), 0);
+  }
+
+  /**
+   * Stores a result, unless the cache was invalidated since the miss that led to this lookup.
+   */
+  void put(Address address, Address result, Lookup miss) {
+    Key key = new Key(address);
+    Entry entry = new Entry(result == null ? NOT_FOUND : new Address(result), System.nanoTime());
+    Segment segment = segmentFor(key);
+    synchronized (segment) {
+      if (miss.epoch == epoch.get()) {
+        segment.put(key, entry);
+      }
+    }
+  }
+
+  public void invalidateAll() {
+    epoch.incrementAndGet();
+    for (Segment segment : segments) {
+      synchronized (segment) {
+        segment.clear();
+      }
+    }
+  }
+
+  public long size() {
+    long size = 0;
+    for (Segment segment : segments) {
+      synchronized (segment) {
+        size += segment.size();
+      }
+    }
+    return size;
+  }
+
+  public long getHitCount() {
+    return hits.get();
+  }
+
+  public long getMissCount() {
+    return misses.get();
+  }
+
+  public long getEvictionCount() {
+    return evictions.get();
+  }
+
+  private Segment segmentFor(Key key) {
+    int hash = key.hashCode();
+    hash ^= hash >>> 16;
+    return segments[(hash & Integer.MAX_VALUE) % segments.length];
+  }
+
+  static class Lookup {
+    final boolean found;
+    final Address address;
+    private final long epoch;
+
+    private Lookup(boolean found, Address address, long epoch) {
+      this.found = found;
+      this.address = address;
+      this.epoch = epoch;
+    }
+  }
+
+  private static class Entry {
+    private final Address address;
+    private final long written;
+
+    private Entry(Address address, long written) {
+      this.address = address;
+      this.written = written;
+    }
+  }
+
+  private class Segment extends LinkedHashMap<Key, Entry> {
+    private static final long serialVersionUID = 1L;
+
+    private final int maxSize;
+
+    private Segment(int maxSize) {
+      super(16, 0.75f, true);
+      this.maxSize = maxSize;
+    }
+
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+      if (size() > maxSize) {
+        evictions.incrementAndGet();
+        return true;
+      }
+      return false;
+    }
+  }
+
+  private static class Key {
+    private final String[] values;
+    private final int hash;
+
+    private Key(Address address) {
+      values = new String[]{address.getPostcode(), address.getStreet(), address.getCity(), address.getMunicipality(),
+          address.getHouseNumber(), address.getHouseNumberAffix(), address.getDescription()};
+      hash = Arrays.hashCode(values);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      return o instanceof Key && Arrays.equals(values, ((Key) o).values);
+    }
+
+    @Override
+    public int hashCode() {
+      return hash;
+    }
+  }
+}
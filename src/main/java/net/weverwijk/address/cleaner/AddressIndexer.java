@@ -0,0 +1,285 @@
+package net.weverwijk.address.cleaner;
+
+import au.com.bytecode.opencsv.CSVReader;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.IntField;
+import org.apache.lucene.document.NumericDocValuesField;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.Term;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Feeds the rows of a postcode csv into an {@link IndexWriter}. The csv is parsed on the calling thread and handed
+ * over in batches to a number of indexing threads, each reusing its own {@link Document}.
+ */
+class AddressIndexer {
+  static final String ID_FIELD = "id";
+  private static final List<String[]> END_OF_INPUT = Collections.emptyList();
+
+  private final IndexWriter writer;
+  private final IndexSettings settings;
+
+  AddressIndexer(IndexWriter writer, IndexSettings settings) {
+    this.writer = writer;
+    this.settings = settings;
+  }
+
+  void index(CSVReader csvReader, Map<String, Integer> header) throws IOException {
+    Columns columns = new Columns(header);
+    if (settings.getIndexingThreads() <= 1) {
+      AddressDocument document = new AddressDocument(columns, settings.isCompactSchema());
+      String[] nextLine;
+      while ((nextLine = csvReader.readNext()) != null) {
+        writer.addDocument(document.fill(nextLine));
+      }
+    } else {
+      indexConcurrently(csvReader, columns);
+    }
+  }
+
+  /**
+   * Adds, replaces or deletes the rows of a change file, keyed on {@link #id(String, String, String)}. The file has
+   * the regular columns plus an "action" column; delete rows only need the postcode and number range.
+   */
+  void applyDelta(CSVReader csvReader, Map<String, Integer> header) throws IOException {
+    Columns columns = new Columns(header);
+    int action = Columns.column(header, "action");
+    AddressDocument document = new AddressDocument(columns, settings.isCompactSchema());
+    String[] nextLine;
+    while ((nextLine = csvReader.readNext()) != null) {
+      Term id = new Term(ID_FIELD, id(nextLine[columns.postcode], nextLine[columns.minNumber], nextLine[columns.maxNumber]));
+      switch (nextLine[action].trim().toLowerCase()) {
+        case "add":
+        case "change":
+          writer.updateDocument(id, document.fill(nextLine));
+          break;
+        case "delete":
+          writer.deleteDocuments(id);
+          break;
+        default:
+          throw new IllegalArgumentException("unknown action " + nextLine[action] + " for " + id.text());
+      }
+    }
+  }
+
+  /**
+   * Key of a row: a postcode holds several rows, but never two with the same number range.
+   */
+  static String id(String postcode, String minNumber, String maxNumber) {
+    return postcode.replace(" ", "").toUpperCase() + ':' + minNumber.trim() + '-' + maxNumber.trim();
+  }
+
+  private void indexConcurrently(CSVReader csvReader, Columns columns) throws IOException {
+    int threadCount = settings.getIndexingThreads();
+    BlockingQueue<List<String[]>> queue = new ArrayBlockingQueue<>(threadCount * 2);
+    AtomicReference<Throwable> failure = new AtomicReference<>();
+    List<Thread> threads = new ArrayList<>(threadCount);
+    for (int i = 0; i < threadCount; i++) {
+      Thread thread = new Thread(new IndexingWorker(queue, failure, new AddressDocument(columns, settings.isCompactSchema())), "address-indexer-" + i);
+      thread.setDaemon(true);
+      thread.start();
+      threads.add(thread);
+    }
+
+    boolean completed = false;
+    try {
+      List<String[]> batch = new ArrayList<>(settings.getBatchSize());
+      String[] nextLine;
+      while (failure.get() == null && (nextLine = csvReader.readNext()) != null) {
+        batch.add(nextLine);
+        if (batch.size() == settings.getBatchSize()) {
+          queue.put(batch);
+          batch = new ArrayList<>(settings.getBatchSize());
+        }
+      }
+      if (!batch.isEmpty()) {
+        queue.put(batch);
+      }
+      for (int i = 0; i < threadCount; i++) {
+        queue.put(END_OF_INPUT);
+      }
+      for (Thread thread : threads) {
+        thread.join();
+      }
+      completed = true;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("interrupted while indexing addresses");
+    } finally {
+      if (!completed) {
+        for (Thread thread : threads) {
+          thread.interrupt();
+        }
+      }
+    }
+
+    Throwable cause = failure.get();
+    if (cause instanceof IOException) {
+      throw (IOException) cause;
+    }
+    if (cause instanceof RuntimeException) {
+      throw (RuntimeException) cause;
+    }
+    if (cause instanceof Error) {
+      throw (Error) cause;
+    }
+  }
+
+  private class IndexingWorker implements Runnable {
+    private final BlockingQueue<List<String[]>> queue;
+    private final AtomicReference<Throwable> failure;
+    private final AddressDocument document;
+
+    private IndexingWorker(BlockingQueue<List<String[]>> queue, AtomicReference<Throwable> failure, AddressDocument document) {
+      this.queue = queue;
+      this.failure = failure;
+      this.document = document;
+    }
+
+    @Override
+    public void run() {
+      try {
+        List<String[]> batch;
+        while ((batch = queue.take()) != END_OF_INPUT) {
+          // after a failure keep draining the queue, so the reading thread never blocks on a full queue
+          if (failure.get() == null) {
+            for (String[] line : batch) {
+              writer.addDocument(document.fill(line));
+            }
+          }
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      } catch (Throwable t) {
+        failure.compareAndSet(null, t);
+        drain();
+      }
+    }
+
+    private void drain() {
+      try {
+        while (queue.take() != END_OF_INPUT) {
+          // discard
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  private static class Columns {
+    private final int postcode;
+    private final int city;
+    private final int municipality;
+    private final int street;
+    private final int numberType;
+    private final int minNumber;
+    private final int maxNumber;
+
+    private Columns(Map<String, Integer> header) {
+      postcode = column(header, "postcode");
+      city = column(header, "city");
+      municipality = column(header, "municipality");
+      street = column(header, "street");
+      numberType = column(header, "numbertype");
+      minNumber = column(header, "minnumber");
+      maxNumber = column(header, "maxnumber");
+    }
+
+    private static int column(Map<String, Integer> header, String name) {
+      Integer column = header.get(name);
+      if (column == null) {
+        throw new IllegalArgumentException("missing column " + name);
+      }
+      return column;
+    }
+  }
+
+  /**
+   * One reusable document per indexing thread; {@link IndexWriter#addDocument} is done with the fields once it returns.
+   * The compact schema keeps the house number fields in doc values only and stores just the fields of an
+   * {@link Address}.
+   */
+  private static class AddressDocument {
+    private final Columns columns;
+    private final boolean compact;
+    private final Document document = new Document();
+    private final Field id = new StringField(ID_FIELD, "", Field.Store.NO);
+    private final Field postcode = new TextField("postcode", "", Field.Store.YES);
+    private final Field street = new TextField("street", "", Field.Store.YES);
+    private final Field streetAnalyzed;
+    private final Field city = new TextField("city", "", Field.Store.YES);
+    private final Field municipality = new TextField("municipality", "", Field.Store.YES);
+    private final Field numberType;
+    private final Field minNumber;
+    private final Field maxNumber;
+    private final Field complete;
+    private final StringBuilder completeValue = new StringBuilder();
+
+    private AddressDocument(Columns columns, boolean compact) {
+      this.columns = columns;
+      this.compact = compact;
+      Field.Store store = compact ? Field.Store.NO : Field.Store.YES;
+      streetAnalyzed = new TextField("streetAnalyzed", "", store);
+      complete = new TextField("complete", "", store);
+      if (compact) {
+        numberType = new NumericDocValuesField("numbertype", 0);
+        minNumber = new NumericDocValuesField("minnumber", 0);
+        maxNumber = new NumericDocValuesField("maxnumber", 0);
+      } else {
+        numberType = new TextField("numbertype", "", Field.Store.YES);
+        minNumber = new IntField("minnumber", 0, Field.Store.YES);
+        maxNumber = new IntField("maxnumber", 0, Field.Store.YES);
+      }
+      document.add(id);
+      document.add(postcode);
+      document.add(street);
+      document.add(streetAnalyzed);
+      document.add(city);
+      document.add(municipality);
+      document.add(numberType);
+      document.add(minNumber);
+      document.add(maxNumber);
+      document.add(complete);
+    }
+
+    private Document fill(String[] line) {
+      String postcodeValue = line[columns.postcode];
+      String streetValue = line[columns.street];
+      String cityValue = line[columns.city];
+      String municipalityValue = line[columns.municipality];
+      id.setStringValue(id(postcodeValue, line[columns.minNumber], line[columns.maxNumber]));
+      postcode.setStringValue(postcodeValue);
+      street.setStringValue(streetValue);
+      streetAnalyzed.setStringValue(streetValue);
+      city.setStringValue(cityValue);
+      municipality.setStringValue(municipalityValue);
+      if (compact) {
+        numberType.setLongValue(PostcodeTable.numberType(line[columns.numberType]));
+        minNumber.setLongValue(Integer.parseInt(line[columns.minNumber]));
+        maxNumber.setLongValue(Integer.parseInt(line[columns.maxNumber]));
+      } else {
+        numberType.setStringValue(line[columns.numberType]);
+        minNumber.setIntValue(Integer.parseInt(line[columns.minNumber]));
+        maxNumber.setIntValue(Integer.parseInt(line[columns.maxNumber]));
+      }
+      completeValue.setLength(0);
+      completeValue.append(postcodeValue).append(' ').append(streetValue).append(' ')
+          .append(cityValue).append(' ').append(municipalityValue);
+      complete.setStringValue(completeValue.toString());
+      return document;
+    }
+  }
+}
@@ -0,0 +1,214 @@
+package net.weverwijk.address.cleaner;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.lucene.queryparser.classic.ParseException;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serves a {@link PostcodeCheck} over HTTP with JSON bodies.
+ * <ul>
+ * <li>{@code POST /address} cleans one address object; 404 when nothing is found. Concurrent single lookups are
+ * grouped into small batches so they share a searcher.</li>
+ * <li>{@code POST /addresses} cleans an array of address objects and answers an array with null for addresses that
+ * were not found.</li>
+ * </ul>
+ * Requests beyond {@link LookupServerSettings#getMaxInFlight()} are refused with 429 instead of queueing up.
+ * <p>
+ * The JDK server writes the headers and the body of a response separately, so with Nagle's algorithm on every small
+ * response waits for a delayed ack, some 40 ms. Start the JVM with {@code -Dsun.net.httpserver.nodelay=true}; it
+ * applies to all JDK HTTP servers in the process and is read once, when the first one is created.
+ */
+public class AddressLookupServer implements Closeable {
+  private static final String JSON_TYPE = "application/json; charset=utf-8";
+
+  private final PostcodeCheck postcodeCheck;
+  private final LookupServerSettings settings;
+  private final Semaphore inFlight;
+  private final MicroBatcher batcher;
+  private final ExecutorService handlers;
+  private final HttpServer server;
+
+  public AddressLookupServer(PostcodeCheck postcodeCheck, LookupServerSettings settings) throws IOException {
+    if (settings.getMaxInFlight() < 1 || settings.getBatchSize() < 1 || settings.getLookupThreads() < 1) {
+      throw new IllegalArgumentException("maxInFlight, batchSize and lookupThreads must be positive");
+    }
+    this.postcodeCheck = postcodeCheck;
+    this.settings = settings;
+    this.inFlight = new Semaphore(settings.getMaxInFlight());
+    this.batcher = new MicroBatcher(postcodeCheck, settings.getBatchSize(),
+        TimeUnit.MICROSECONDS.toNanos(settings.getBatchWindowMicros()), settings.getLookupThreads());
+    this.handlers = Executors.newCachedThreadPool(new BatchCleaner.WorkerThreadFactory("address-http-"));
+    this.server = HttpServer.create(new InetSocketAddress(settings.getBindAddress(), settings.getPort()), 0);
+    server.setExecutor(handlers);
+    server.createContext("/address", new Handler(false));
+    server.createContext("/addresses", new Handler(true));
+  }
+
+  public void start() {
+    server.start();
+  }
+
+  /**
+   * The port actually listened on, useful when the settings asked for any free port.
+   */
+  public int getPort() {
+    return server.getAddress().getPort();
+  }
+
+  public InetSocketAddress getAddress() {
+    return server.getAddress();
+  }
+
+  @Override
+  public void close() {
+    server.stop(0);
+    batcher.close();
+    handlers.shutdownNow();
+  }
+
+  private String single(Object request) throws IOException, ParseException {
+    Address found = batcher.getAddress(Json.toAddress(request));
+    if (found == null) {
+      return null;
+    }
+    StringBuilder out = new StringBuilder();
+    Json.write(out, found);
+    return out.toString();
+  }
+
+  private String bulk(Object request) throws IOException, ParseException {
+    if (!(request instanceof List)) {
+      throw new IllegalArgumentException("expected an array of addresses");
+    }
+    List<?> elements = (List<?>) request;
+    List<Address> addresses = new ArrayList<>(elements.size());
+    for (Object element : elements) {
+      addresses.add(Json.toAddress(element));
+    }
+    StringBuilder out = new StringBuilder().append('[');
+    for (Address found : postcodeCheck.getAddresses(addresses)) {
+      if (out.length() > 1) {
+        out.append(',');
+      }
+      Json.write(out, found);
+    }
+    return out.append(']').toString();
+  }
+
+  /**
+   * Reads the request body, or returns null as soon as it grows beyond the limit; chunked requests have no length to
+   * check up front.
+   */
+  private static String readBody(InputStream in, int limit) throws IOException {
+    ByteArrayOutputStream body = new ByteArrayOutputStream();
+    byte[] buffer = new byte[4096];
+    int read;
+    while ((read = in.read(buffer)) != -1) {
+      if (body.size() + read > limit) {
+        return null;
+      }
+      body.write(buffer, 0, read);
+    }
+    return new String(body.toByteArray(), StandardCharsets.UTF_8);
+  }
+
+  private static boolean declaresMoreThan(HttpExchange exchange, int limit) {
+    String length = exchange.getRequestHeaders().getFirst("Content-Length");
+    try {
+      return length != null && Long.parseLong(length.trim()) > limit;
+    } catch (NumberFormatException e) {
+      return false;
+    }
+  }
+
+  private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+    byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+    exchange.getResponseHeaders().set("Content-Type", JSON_TYPE);
+    exchange.sendResponseHeaders(status, bytes.length);
+    try (OutputStream out = exchange.getResponseBody()) {
+      out.write(bytes);
+    }
+  }
+
+  private static String error(String message) {
+    StringBuilder out = new StringBuilder("{\"error\":");
+    return Json.writeString(out, message).append('}').toString();
+  }
+
+  private class Handler implements HttpHandler {
+    private final boolean bulk;
+
+    private Handler(boolean bulk) {
+      this.bulk = bulk;
+    }
+
+    @Override
+    public void handle(HttpExchange exchange) throws IOException {
+      try {
+        if (!"POST".equals(exchange.getRequestMethod())) {
+          exchange.getResponseHeaders().set("Allow", "POST");
+          respond(exchange, 405, error("use POST"));
+          return;
+        }
+        if (!inFlight.tryAcquire()) {
+          respond(exchange, 429, error("too many requests"));
+          return;
+        }
+        try {
+          String body = declaresMoreThan(exchange, settings.getMaxBodyBytes())
+              ? null : readBody(exchange.getRequestBody(), settings.getMaxBodyBytes());
+          if (body == null) {
+            respond(exchange, 413, error("at most " + settings.getMaxBodyBytes() + " bytes per request"));
+          } else {
+            handle(exchange, body);
+          }
+        } finally {
+          inFlight.release();
+        }
+      } finally {
+        exchange.close();
+      }
+    }
+
+    private void handle(HttpExchange exchange, String body) throws IOException {
+      Object request;
+      try {
+        request = Json.parse(body);
+      } catch (IllegalArgumentException e) {
+        respond(exchange, 400, error(e.getMessage()));
+        return;
+      }
+      if (bulk && request instanceof List && ((List<?>) request).size() > settings.getMaxBulkSize()) {
+        respond(exchange, 413, error("at most " + settings.getMaxBulkSize() + " addresses per request"));
+        return;
+      }
+      try {
+        String result = bulk ? bulk(request) : single(request);
+        if (result == null) {
+          respond(exchange, 404, error("no address found"));
+        } else {
+          respond(exchange, 200, result);
+        }
+      } catch (IllegalArgumentException e) {
+        respond(exchange, 400, error(e.getMessage()));
+      } catch (IOException | ParseException | RuntimeException e) {
+        respond(exchange, 500, error(String.valueOf(e.getMessage())));
+      }
+    }
+  }
+}
@@ -0,0 +1,147 @@
+package net.weverwijk.address.cleaner;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.FuzzyQuery;
+import org.apache.lucene.search.NumericRangeQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.util.QueryBuilder;
+
+/**
+ * Turns an input address into the Lucene query used by {@link PostcodeCheck}. The free text parts are analyzed
+ * with the analyzers the index was built with, straight into term queries, without a query parser. One instance
+ * is shared by all lookups; the analyzers reuse their token streams per thread.
+ */
+public class AddressQueryBuilder {
+  private final QueryBuilder queryBuilder;
+
+  public AddressQueryBuilder(Analyzer analyzer) {
+    this.queryBuilder = new QueryBuilder(analyzer);
+  }
+
+  public Query build(Address address) {
+    return build(address, null, false, MatchSource.INDEX, null);
+  }
+
+  /**
+   * With a street recognised in the description, the description is searched through targeted term queries on
+   * street and city instead of a full text query on the complete field. With houseNumberFiltered set the house
+   * number is left out, for a {@link HouseNumberFilter} to handle.
+   * <p>
+   * The stage limits the clauses to those of a {@link QueryCascade} stage; {@link MatchSource#INDEX} gives all of
+   * them. The fuzzy terms use the edits and prefix of the cascade, or the Lucene defaults without one.
+   */
+  Query build(Address address, DescriptionMatch match, boolean houseNumberFiltered, MatchSource stage, QueryCascade cascade) {
+    BooleanQuery booleanQuery = new BooleanQuery();
+    boolean analyzed = stage != MatchSource.EXACT;
+    boolean fuzzy = analyzed && stage != MatchSource.ANALYZED;
+    int maxEdits = cascade != null ? cascade.getMaxEdits() : FuzzyQuery.defaultMaxEdits;
+    int prefixLength = cascade != null ? cascade.getPrefixLength() : FuzzyQuery.defaultPrefixLength;
+
+    if (address.getPostcode() != null) {
+      Query postcode = new LowerCaseTermQuery(new Term("postcode", address.getPostcode()));
+      postcode.setBoost(20F);
+      booleanQuery.add(postcode, BooleanClause.Occur.SHOULD);
+    }
+    if (address.getStreet() != null) {
+      LowerCaseTermQuery streetTerm = new LowerCaseTermQuery(new Term("street", address.getStreet()));
+      streetTerm.setBoost(30F);
+      booleanQuery.add(streetTerm, BooleanClause.Occur.SHOULD);
+      if (fuzzy) {
+        booleanQuery.add(fuzzy("street", address.getStreet(), maxEdits, prefixLength), BooleanClause.Occur.SHOULD);
+      }
+      if (analyzed) {
+        addAnalyzed(booleanQuery, "streetAnalyzed", address.getStreet());
+      }
+    }
+    if (address.getCity() != null) {
+      if (fuzzy) {
+        booleanQuery.add(fuzzy("city", address.getCity(), maxEdits, prefixLength), BooleanClause.Occur.SHOULD);
+      }
+      LowerCaseTermQuery cityTerm = new LowerCaseTermQuery(new Term("city", address.getCity()));
+      cityTerm.setBoost(30F);
+      booleanQuery.add(cityTerm, BooleanClause.Occur.SHOULD);
+    }
+    if (address.getMunicipality() != null) {
+      if (fuzzy) {
+        booleanQuery.add(fuzzy("municipality", address.getMunicipality(), maxEdits, prefixLength), BooleanClause.Occur.SHOULD);
+      }
+      LowerCaseTermQuery municipalityTerm = new LowerCaseTermQuery(new Term("municipality", address.getMunicipality()));
+      municipalityTerm.setBoost(5F);
+      booleanQuery.add(municipalityTerm, BooleanClause.Occur.SHOULD);
+    }
+
+    try {
+      if (address.getHouseNumber() != null && !houseNumberFiltered) {
+        int houseNumber = Integer.parseInt(address.getHouseNumber());
+
+        BooleanQuery oddEvenQuery = new BooleanQuery();
+        oddEvenQuery.add(new LowerCaseTermQuery(new Term("numbertype", "mixed")), BooleanClause.Occur.SHOULD);
+        if (houseNumber % 2 == 0) {
+          oddEvenQuery.add(new LowerCaseTermQuery(new Term("numbertype", "even")), BooleanClause.Occur.SHOULD);
+        } else {
+          oddEvenQuery.add(new LowerCaseTermQuery(new Term("numbertype", "odd")), BooleanClause.Occur.SHOULD);
+
+        }
+        booleanQuery.add(oddEvenQuery, BooleanClause.Occur.MUST);
+        booleanQuery.add(NumericRangeQuery.newIntRange("minnumber", 0, houseNumber, true, true), BooleanClause.Occur.SHOULD);
+        booleanQuery.add(NumericRangeQuery.newIntRange("maxnumber", houseNumber, 9999, true, true), BooleanClause.Occur.SHOULD);
+      }
+    } catch (NumberFormatException e) {
+      // nothing to see, walk through...
+    }
+
+    if (match != null && match.getCity() != null && address.getCity() == null) {
+      LowerCaseTermQuery cityTerm = new LowerCaseTermQuery(new Term("city", match.getCity()));
+      cityTerm.setBoost(30F);
+      booleanQuery.add(cityTerm, BooleanClause.Occur.SHOULD);
+      LowerCaseTermQuery municipalityTerm = new LowerCaseTermQuery(new Term("municipality", match.getCity()));
+      municipalityTerm.setBoost(5F);
+      booleanQuery.add(municipalityTerm, BooleanClause.Occur.SHOULD);
+    }
+    if (match != null && match.getStreet() != null) {
+      // the street comes from the index, so requiring it always leaves hits and keeps the other clauses to its rows
+      LowerCaseTermQuery streetTerm = new LowerCaseTermQuery(new Term("street", match.getStreet()));
+      streetTerm.setBoost(30F);
+      booleanQuery.add(streetTerm, BooleanClause.Occur.MUST);
+    } else if (analyzed && StringUtils.isNotBlank(address.getDescription())) {
+      addAnalyzed(booleanQuery, "complete", address.getDescription());
+    }
+    return booleanQuery;
+  }
+
+  /**
+   * Whether the stage adds text clauses to those of the stages before it; a stage that does not would only repeat
+   * the previous search.
+   */
+  boolean hasClauses(Address address, DescriptionMatch match, MatchSource stage) {
+    boolean describedStreet = match != null && match.getStreet() != null;
+    switch (stage) {
+      case EXACT:
+        return address.getPostcode() != null || address.getStreet() != null || address.getCity() != null
+            || address.getMunicipality() != null || describedStreet || (match != null && match.getCity() != null);
+      case ANALYZED:
+        return address.getStreet() != null || (!describedStreet && StringUtils.isNotBlank(address.getDescription()));
+      case FUZZY:
+        return address.getStreet() != null || address.getCity() != null || address.getMunicipality() != null;
+      default:
+        return true;
+    }
+  }
+
+  private static Query fuzzy(String field, String text, int maxEdits, int prefixLength) {
+    // the fields are indexed in lower case, like LowerCaseTermQuery searches them
+    return new FuzzyQuery(new Term(field, text.toLowerCase()), maxEdits, prefixLength);
+  }
+
+  private void addAnalyzed(BooleanQuery booleanQuery, String field, String text) {
+    // null when the analyzer leaves no tokens, e.g. only stop words
+    Query query = queryBuilder.createBooleanQuery(field, text);
+    if (query != null) {
+      booleanQuery.add(query, BooleanClause.Occur.SHOULD);
+    }
+  }
+}
@@ -0,0 +1,65 @@
+package net.weverwijk.address.cleaner;
+
+import org.apache.lucene.index.FieldInfo;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.MultiFields;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.SearcherFactory;
+
+import java.io.IOException;
+
+/**
+ * Searcher that carries the lookup structures derived from its reader, so they are always in sync with the index
+ * the searcher sees.
+ */
+class AddressSearcher extends IndexSearcher {
+  private final boolean compactSchema;
+  private final PostcodeTable postcodeTable;
+  private final StreetDictionary streetDictionary;
+  private final AddressTable addressTable;
+
+  AddressSearcher(IndexReader reader, boolean withAddressTable) throws IOException {
+    super(reader);
+    FieldInfo minNumber = MultiFields.getMergedFieldInfos(reader).fieldInfo("minnumber");
+    this.compactSchema = minNumber != null && minNumber.hasDocValues();
+    this.addressTable = withAddressTable ? AddressTable.build(reader) : null;
+    this.postcodeTable = PostcodeTable.build(reader, compactSchema, addressTable);
+    this.streetDictionary = StreetDictionary.build(reader);
+  }
+
+  /**
+   * True when the index was built with {@link IndexSettings#isCompactSchema()}, so house numbers are in doc values.
+   */
+  boolean isCompactSchema() {
+    return compactSchema;
+  }
+
+  PostcodeTable getPostcodeTable() {
+    return postcodeTable;
+  }
+
+  StreetDictionary getStreetDictionary() {
+    return streetDictionary;
+  }
+
+  /**
+   * The in-memory address of every document, or null when {@link IndexSettings#isAddressTable()} is off and
+   * candidates come from the stored fields.
+   */
+  AddressTable getAddressTable() {
+    return addressTable;
+  }
+
+  static class Factory extends SearcherFactory {
+    private final boolean withAddressTable;
+
+    Factory(boolean withAddressTable) {
+      this.withAddressTable = withAddressTable;
+    }
+
+    @Override
+    public IndexSearcher newSearcher(IndexReader reader) throws IOException {
+      return new AddressSearcher(reader, withAddressTable);
+    }
+  }
+}
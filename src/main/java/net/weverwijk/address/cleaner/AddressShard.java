@@ -0,0 +1,25 @@
+package net.weverwijk.address.cleaner;
+
+import org.apache.lucene.queryparser.classic.ParseException;
+
+import java.io.IOException;
+import java.rmi.Remote;
+import java.util.List;
+
+/**
+ * One part of a postcode index split by postcode region, see {@link ShardedPostcodeCheck}. {@link PostcodeCheckShard}
+ * is the implementation; in the same JVM it is used as is, in another process it is exported with RMI by
+ * {@link AddressShardServer}.
+ */
+public interface AddressShard extends Remote {
+
+  /**
+   * The complete lookup, for inputs whose postcode belongs to this shard.
+   */
+  Address getAddress(Address address) throws IOException, ParseException;
+
+  /**
+   * The index candidates for the address, highest score first, for the caller to merge with those of other shards.
+   */
+  List<ScoredAddress> searchCandidates(Address address) throws IOException;
+}
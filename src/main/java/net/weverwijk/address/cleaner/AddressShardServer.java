@@ -0,0 +1,84 @@
+package net.weverwijk.address.cleaner;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.rmi.NotBoundException;
+import java.rmi.registry.LocateRegistry;
+import java.rmi.registry.Registry;
+import java.rmi.server.RMIClientSocketFactory;
+import java.rmi.server.RMIServerSocketFactory;
+import java.rmi.server.UnicastRemoteObject;
+
+/**
+ * Serves one shard of a {@link ShardedPostcodeCheck} from its own process on the same host, over RMI. Start one per
+ * shard csv written by {@link ShardedPostcodeCheck#splitCsv(String, int, java.io.File)}:
+ * <pre>
+ * java net.weverwijk.address.cleaner.AddressShardServer shard-0.csv 1099 shard-0
+ * </pre>
+ * and {@link #connect(int, String)} to each of them from the process that does the lookups. The registry and the
+ * shards only listen on the loopback address.
+ */
+public class AddressShardServer {
+  private static final LoopbackSocketFactory LOOPBACK = new LoopbackSocketFactory();
+
+  public static void main(String[] args) throws IOException {
+    if (args.length != 3) {
+      System.err.println("usage: AddressShardServer <shard csv> <registry port> <name>");
+      System.exit(1);
+    }
+    PostcodeCheck postcodeCheck = new PostcodeCheck();
+    postcodeCheck.loadAddresses(args[0]);
+    export(new PostcodeCheckShard(postcodeCheck), createRegistry(Integer.parseInt(args[1])), args[2]);
+    System.out.println("serving " + args[0] + " as " + args[2] + " on port " + args[1]);
+  }
+
+  public static Registry createRegistry(int port) throws IOException {
+    return LocateRegistry.createRegistry(port, LOOPBACK, LOOPBACK);
+  }
+
+  /**
+   * Binds the shard in the registry; RMI keeps the process running while it is exported.
+   */
+  public static void export(PostcodeCheckShard shard, Registry registry, String name) throws IOException {
+    registry.rebind(name, UnicastRemoteObject.exportObject(shard, 0, LOOPBACK, LOOPBACK));
+  }
+
+  public static AddressShard connect(int port, String name) throws IOException {
+    try {
+      return (AddressShard) LocateRegistry.getRegistry(null, port, LOOPBACK).lookup(name);
+    } catch (NotBoundException e) {
+      throw new IOException("no shard " + name + " on port " + port, e);
+    }
+  }
+
+  /**
+   * Listens on and connects to the loopback address only. It is sent along with the stubs, so it has to be
+   * serializable and equal after deserialization for RMI to share connections.
+   */
+  private static class LoopbackSocketFactory implements RMIServerSocketFactory, RMIClientSocketFactory, Serializable {
+    private static final long serialVersionUID = 1L;
+
+    @Override
+    public ServerSocket createServerSocket(int port) throws IOException {
+      return new ServerSocket(port, 0, InetAddress.getLoopbackAddress());
+    }
+
+    @Override
+    public Socket createSocket(String host, int port) throws IOException {
+      return new Socket(InetAddress.getLoopbackAddress(), port);
+    }
+
+    @Override
+    public boolean equals(Object other) {
+      return other instanceof LoopbackSocketFactory;
+    }
+
+    @Override
+    public int hashCode() {
+      return LoopbackSocketFactory.class.hashCode();
+    }
+  }
+}
@@ -0,0 +1,357 @@
+package net.weverwijk.address.cleaner;
+
+import org.apache.lucene.analysis.synonym.SynonymMap;
+import org.apache.lucene.store.ByteArrayDataInput;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.BytesRefBuilder;
+import org.apache.lucene.util.CharsRefBuilder;
+import org.apache.lucene.util.fst.FST;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.zip.CRC32;
+
+/**
+ * Rewrites variant spellings of places and street words to the names used in the postcode data, from rule files in
+ * the Solr synonyms format: one {@code variant, variant => name} rule per line, {@code #} starts a comment.
+ * <ul>
+ * <li>Place rules match a whole city or municipality, such as "den haag" for 's-Gravenhage.</li>
+ * <li>Street rules match whole words, such as "burg." for Burgemeester. A variant starting with a hyphen matches the
+ * end of a word instead, so with {@code -str. => straat} "Kerkstr." becomes "Kerkstraat".</li>
+ * </ul>
+ * Variants match case insensitively, runs of white space count as one. The rules are compiled into Lucene
+ * {@link SynonymMap}s and applied in one pass over the input that walks their FST, creating a string only when a
+ * rule matches.
+ * <p>
+ * {@link #current()} is used by {@link Address} for inputs, and taken by {@link PostcodeCheck#loadAddresses(String)}
+ * for the index and the lookups on it. After {@link #setCurrent(AddressSynonyms)} new inputs use the new rules right
+ * away, a loaded index keeps its rules; the next load sees that the index was built with other rules, rebuilds it and
+ * drops the cached results.
+ */
+public class AddressSynonyms {
+  public static final String PLACE_RESOURCE = "place-synonyms.txt";
+  public static final String STREET_RESOURCE = "street-synonyms.txt";
+
+  private static volatile AddressSynonyms current;
+
+  private final SynonymMap places;
+  private final SynonymMap streetWords;
+  private final SynonymMap streetSuffixes;
+  private final String version;
+  private final ThreadLocal<Matchers> matchers = new ThreadLocal<Matchers>() {
+    @Override
+    protected Matchers initialValue() {
+      return new Matchers();
+    }
+  };
+
+  private AddressSynonyms(SynonymMap places, SynonymMap streetWords, SynonymMap streetSuffixes, String version) {
+    this.places = places;
+    this.streetWords = streetWords;
+    this.streetSuffixes = streetSuffixes;
+    this.version = version;
+  }
+
+  /**
+   * The rules in use, the bundled ones unless others were set.
+   */
+  public static AddressSynonyms current() {
+    AddressSynonyms synonyms = current;
+    if (synonyms == null) {
+      synchronized (AddressSynonyms.class) {
+        if (current == null) {
+          current = bundled();
+        }
+        synonyms = current;
+      }
+    }
+    return synonyms;
+  }
+
+  public static void setCurrent(AddressSynonyms synonyms) {
+    current = synonyms;
+  }
+
+  /**
+   * The rules shipped with the library.
+   */
+  public static AddressSynonyms bundled() {
+    try (InputStream places = AddressSynonyms.class.getResourceAsStream(PLACE_RESOURCE);
+         InputStream streets = AddressSynonyms.class.getResourceAsStream(STREET_RESOURCE)) {
+      return load(new InputStreamReader(places, StandardCharsets.UTF_8),
+          new InputStreamReader(streets, StandardCharsets.UTF_8));
+    } catch (IOException e) {
+      throw new IllegalStateException("cannot read the bundled synonyms", e);
+    }
+  }
+
+  public static AddressSynonyms load(File places, File streets) throws IOException {
+    try (InputStream placeRules = new FileInputStream(places); InputStream streetRules = new FileInputStream(streets)) {
+      return load(new InputStreamReader(placeRules, StandardCharsets.UTF_8),
+          new InputStreamReader(streetRules, StandardCharsets.UTF_8));
+    }
+  }
+
+  /**
+   * Throws an {@link IllegalArgumentException} naming the line of a malformed rule.
+   */
+  public static AddressSynonyms load(Reader places, Reader streets) throws IOException {
+    CRC32 checksum = new CRC32();
+    SynonymMap.Builder placeMap = new SynonymMap.Builder(true);
+    compile(places, checksum, placeMap, null);
+    SynonymMap.Builder wordMap = new SynonymMap.Builder(true);
+    SynonymMap.Builder suffixMap = new SynonymMap.Builder(true);
+    compile(streets, checksum, wordMap, suffixMap);
+    return new AddressSynonyms(placeMap.build(), wordMap.build(), suffixMap.build(),
+        Long.toHexString(checksum.getValue()));
+  }
+
+  /**
+   * Identifies the rules, so an index built with other rules can be recognised.
+   */
+  public String getVersion() {
+    return version;
+  }
+
+  /**
+   * Returns the name for a variant city or municipality, otherwise the value itself.
+   */
+  public String normalizePlace(String value) {
+    String rewritten = value == null ? null : rewritePlace(value);
+    return rewritten != null ? rewritten : value;
+  }
+
+  /**
+   * Returns the street with its abbreviated words written out, otherwise the value itself.
+   */
+  public String normalizeStreet(String value) {
+    String rewritten = value == null ? null : rewriteStreet(value);
+    return rewritten != null ? rewritten : value;
+  }
+
+  /**
+   * The rewritten place, or null when no rule matches.
+   */
+  String rewritePlace(CharSequence value) {
+    Matcher matcher = matchers.get().places;
+    if (matcher == null) {
+      return null;
+    }
+    int start = skipWhitespace(value, 0);
+    if (start < value.length() && matcher.match(value, start, false) == trimmedLength(value)) {
+      return matcher.output();
+    }
+    return null;
+  }
+
+  /**
+   * The rewritten street, or null when no rule matches.
+   */
+  String rewriteStreet(CharSequence value) {
+    Matchers matchers = this.matchers.get();
+    Matcher words = matchers.streetWords;
+    Matcher suffixes = matchers.streetSuffixes;
+    if (words == null && suffixes == null) {
+      return null;
+    }
+    StringBuilder result = null;
+    int copied = 0;
+    int position = skipWhitespace(value, 0);
+    while (position < value.length()) {
+      int wordEnd = wordEnd(value, position);
+      Matcher matched = words;
+      int end = words == null ? -1 : words.match(value, position, false);
+      int start = position;
+      if (end < 0 && suffixes != null) {
+        matched = suffixes;
+        for (start = position + 1; start < wordEnd; start++) {
+          if (suffixes.match(value, start, true) == wordEnd) {
+            end = wordEnd;
+            break;
+          }
+        }
+      }
+      if (end >= 0) {
+        if (result == null) {
+          result = new StringBuilder(value.length() + 16);
+        }
+        result.append(value, copied, start).append(matched.output());
+        copied = end;
+        position = end;
+      } else {
+        position = wordEnd;
+      }
+      position = skipWhitespace(value, position);
+    }
+    if (result == null) {
+      return null;
+    }
+    return result.append(value, copied, value.length()).toString();
+  }
+
+  private static int wordEnd(CharSequence value, int position) {
+    while (position < value.length() && !Character.isWhitespace(value.charAt(position))) {
+      position++;
+    }
+    return position;
+  }
+
+  private static int skipWhitespace(CharSequence value, int position) {
+    while (position < value.length() && Character.isWhitespace(value.charAt(position))) {
+      position++;
+    }
+    return position;
+  }
+
+  private static int trimmedLength(CharSequence value) {
+    int length = value.length();
+    while (length > 0 && Character.isWhitespace(value.charAt(length - 1))) {
+      length--;
+    }
+    return length;
+  }
+
+  /**
+   * Adds the rules to the builder, or to the suffix builder for the variants starting with a hyphen when there is one.
+   */
+  private static void compile(Reader rules, CRC32 checksum, SynonymMap.Builder builder,
+                              SynonymMap.Builder suffixBuilder) throws IOException {
+    BufferedReader reader = new BufferedReader(rules);
+    String line;
+    int lineNumber = 0;
+    while ((line = reader.readLine()) != null) {
+      lineNumber++;
+      byte[] bytes = line.getBytes(StandardCharsets.UTF_8);
+      checksum.update(bytes, 0, bytes.length);
+      checksum.update('\n');
+      int comment = line.indexOf('#');
+      String rule = (comment >= 0 ? line.substring(0, comment) : line).trim();
+      if (rule.isEmpty()) {
+        continue;
+      }
+      int arrow = rule.indexOf("=>");
+      String name = arrow < 0 ? "" : rule.substring(arrow + 2).trim();
+      if (arrow < 0 || name.isEmpty() || name.contains(",") || rule.substring(0, arrow).trim().isEmpty()) {
+        throw new IllegalArgumentException("line " + lineNumber + ": expected 'variant, variant => name' but got '" + line + "'");
+      }
+      String[] nameWords = words(name);
+      for (String variant : rule.substring(0, arrow).split(",")) {
+        variant = variant.trim().toLowerCase(Locale.ROOT);
+        SynonymMap.Builder target = builder;
+        if (suffixBuilder != null && variant.startsWith("-")) {
+          target = suffixBuilder;
+          variant = variant.substring(1);
+        }
+        String[] variantWords = words(variant);
+        if (variantWords.length == 0 || (target == suffixBuilder && variantWords.length > 1)) {
+          throw new IllegalArgumentException("line " + lineNumber + ": empty variant, or a suffix of several words, in '" + line + "'");
+        }
+        target.add(SynonymMap.Builder.join(variantWords, new CharsRefBuilder()),
+            SynonymMap.Builder.join(nameWords, new CharsRefBuilder()), false);
+      }
+    }
+  }
+
+  private static String[] words(String text) {
+    String trimmed = text.trim();
+    return trimmed.isEmpty() ? new String[0] : trimmed.split("\\s+");
+  }
+
+  /**
+   * The matchers of one thread, as the FST readers are not thread safe; null for a map without rules.
+   */
+  private class Matchers {
+    private final Matcher places = matcher(AddressSynonyms.this.places);
+    private final Matcher streetWords = matcher(AddressSynonyms.this.streetWords);
+    private final Matcher streetSuffixes = matcher(AddressSynonyms.this.streetSuffixes);
+
+    private Matcher matcher(SynonymMap map) {
+      return map.fst == null ? null : new Matcher(map);
+    }
+  }
+
+  /**
+   * Walks the FST of one map.
+   */
+  private static class Matcher {
+    private final SynonymMap map;
+    private final FST<BytesRef> fst;
+    private final FST.BytesReader reader;
+    private final FST.Arc<BytesRef> arc = new FST.Arc<>();
+    private final BytesRefBuilder path = new BytesRefBuilder();
+    private final BytesRefBuilder matched = new BytesRefBuilder();
+    private final ByteArrayDataInput input = new ByteArrayDataInput();
+    private final BytesRef name = new BytesRef();
+
+    private Matcher(SynonymMap map) {
+      this.map = map;
+      this.fst = map.fst;
+      this.reader = fst.getBytesReader();
+    }
+
+    /**
+     * Returns the end of the longest variant that starts at start and ends at the end of a word, or -1. With
+     * singleWord set the variant may not continue past the first word.
+     */
+    int match(CharSequence value, int start, boolean singleWord) {
+      int end = -1;
+      try {
+        fst.getFirstArc(arc);
+        // the outputs are byte sequences, concatenated along the path
+        BytesRef noOutput = fst.outputs.getNoOutput();
+        path.clear();
+        int position = start;
+        while (position < value.length()) {
+          int label;
+          int next;
+          int codePoint = Character.codePointAt(value, position);
+          if (Character.isWhitespace(codePoint)) {
+            next = skipWhitespace(value, position);
+            if (singleWord || next == value.length()) {
+              break;
+            }
+            label = SynonymMap.WORD_SEPARATOR;
+          } else {
+            label = Character.toLowerCase(codePoint);
+            next = position + Character.charCount(codePoint);
+          }
+          if (fst.findTargetArc(label, arc, arc, reader) == null) {
+            break;
+          }
+          if (arc.output != noOutput) {
+            path.append(arc.output);
+          }
+          position = next;
+          if (arc.isFinal() && (position == value.length() || Character.isWhitespace(value.charAt(position)))) {
+            end = position;
+            matched.copyBytes(path);
+            if (arc.nextFinalOutput != noOutput) {
+              matched.append(arc.nextFinalOutput);
+            }
+          }
+        }
+      } catch (IOException e) {
+        // the FST is on the heap, reading it does not do IO
+        throw new IllegalStateException(e);
+      }
+      return end;
+    }
+
+    /**
+     * The name of the last match; the words of a multi word name are separated by a space.
+     */
+    String output() {
+      input.reset(matched.bytes(), 0, matched.length());
+      // the count of names and the keep-original flag; the first name wins when a variant was given several
+      input.readVInt();
+      return map.words.get(input.readVInt(), name).utf8ToString().replace(SynonymMap.WORD_SEPARATOR, ' ');
+    }
+  }
+}
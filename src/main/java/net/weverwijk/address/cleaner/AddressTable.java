@@ -0,0 +1,128 @@
+package net.weverwijk.address.cleaner;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.MultiFields;
+import org.apache.lucene.util.Bits;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Column store of the fields an {@link Address} is built from, indexed by document id. Postcodes are packed ints,
+ * names are ids into deduplicated dictionaries: one for streets and one shared by cities and municipalities, which
+ * are mostly the same names. Reading a candidate from here creates no strings besides the postcode, where the
+ * stored fields decompress a whole block and copy every value.
+ */
+class AddressTable {
+  private static final Set<String> FIELDS = new HashSet<>(Arrays.asList("postcode", "street", "city", "municipality"));
+
+  private final int[] postcodes;
+  private final String[] unpackable;
+  private final int[] streets;
+  private final int[] cities;
+  private final int[] municipalities;
+  private final String[] streetNames;
+  private final String[] placeNames;
+
+  private AddressTable(int[] postcodes, String[] unpackable, int[] streets, int[] cities, int[] municipalities,
+                       String[] streetNames, String[] placeNames) {
+    this.postcodes = postcodes;
+    this.unpackable = unpackable;
+    this.streets = streets;
+    this.cities = cities;
+    this.municipalities = municipalities;
+    this.streetNames = streetNames;
+    this.placeNames = placeNames;
+  }
+
+  static AddressTable build(IndexReader reader) throws IOException {
+    int maxDoc = reader.maxDoc();
+    int[] postcodes = new int[maxDoc];
+    int[] streets = new int[maxDoc];
+    int[] cities = new int[maxDoc];
+    int[] municipalities = new int[maxDoc];
+    Dictionary streetNames = new Dictionary();
+    Dictionary placeNames = new Dictionary();
+    // the few postcodes that do not pack, kept as they are stored
+    String[] unpackable = null;
+    Arrays.fill(postcodes, Postcodes.INVALID);
+    Bits liveDocs = MultiFields.getLiveDocs(reader);
+    for (int doc = 0; doc < maxDoc; doc++) {
+      if (liveDocs != null && !liveDocs.get(doc)) {
+        continue;
+      }
+      Document document = reader.document(doc, FIELDS);
+      String postcode = document.get("postcode");
+      postcodes[doc] = Postcodes.pack(postcode);
+      if (postcodes[doc] == Postcodes.INVALID && postcode != null) {
+        if (unpackable == null) {
+          unpackable = new String[maxDoc];
+        }
+        unpackable[doc] = postcode;
+      }
+      streets[doc] = streetNames.id(document.get("street"));
+      cities[doc] = placeNames.id(document.get("city"));
+      municipalities[doc] = placeNames.id(document.get("municipality"));
+    }
+    return new AddressTable(postcodes, unpackable, streets, cities, municipalities,
+        streetNames.values(), placeNames.values());
+  }
+
+  /**
+   * The packed postcode of the document, or {@link Postcodes#INVALID}.
+   */
+  int postcode(int doc) {
+    return postcodes[doc];
+  }
+
+  String street(int doc) {
+    return name(streetNames, streets[doc]);
+  }
+
+  String city(int doc) {
+    return name(placeNames, cities[doc]);
+  }
+
+  String municipality(int doc) {
+    return name(placeNames, municipalities[doc]);
+  }
+
+  Address address(int doc) {
+    int postcode = postcodes[doc];
+    String value = postcode != Postcodes.INVALID ? Postcodes.unpack(postcode)
+        : unpackable != null ? unpackable[doc] : null;
+    return Address.fromIndex(value, city(doc), municipality(doc), street(doc));
+  }
+
+  private static String name(String[] names, int id) {
+    return id < 0 ? null : names[id];
+  }
+
+  private static class Dictionary {
+    private final HashMap<String, Integer> ids = new HashMap<>();
+    private final List<String> values = new ArrayList<>();
+
+    int id(String value) {
+      if (value == null) {
+        return -1;
+      }
+      Integer id = ids.get(value);
+      if (id == null) {
+        id = values.size();
+        ids.put(value, id);
+        values.add(value);
+      }
+      return id;
+    }
+
+    String[] values() {
+      return values.toArray(new String[values.size()]);
+    }
+  }
+}
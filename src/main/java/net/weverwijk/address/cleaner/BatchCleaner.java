@@ -0,0 +1,152 @@
+package net.weverwijk.address.cleaner;
+
+import org.apache.lucene.queryparser.classic.ParseException;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Cleans many addresses at once by spreading them over a fixed pool of worker threads, all sharing one
+ * {@link PostcodeCheck}. Instances are safe to use from several threads at the same time.
+ */
+public class BatchCleaner implements Closeable {
+  private static final int DEFAULT_CHUNK_SIZE = 256;
+
+  private final PostcodeCheck postcodeCheck;
+  private final ExecutorService executor;
+  private final int chunkSize;
+  private final int maxPendingChunks;
+
+  public BatchCleaner(PostcodeCheck postcodeCheck) {
+    this(postcodeCheck, Runtime.getRuntime().availableProcessors());
+  }
+
+  public BatchCleaner(PostcodeCheck postcodeCheck, int parallelism) {
+    this(postcodeCheck, parallelism, DEFAULT_CHUNK_SIZE);
+  }
+
+  public BatchCleaner(PostcodeCheck postcodeCheck, int parallelism, int chunkSize) {
+    if (parallelism < 1 || chunkSize < 1) {
+      throw new IllegalArgumentException("parallelism and chunkSize must be positive");
+    }
+    this.postcodeCheck = postcodeCheck;
+    this.chunkSize = chunkSize;
+    // like CsvCleaningPipeline, enough chunks ahead to keep every worker busy, without holding the whole input
+    this.maxPendingChunks = parallelism * 2;
+    this.executor = Executors.newFixedThreadPool(parallelism, new WorkerThreadFactory("address-cleaner-"));
+  }
+
+  /**
+   * Returns the cleaned addresses in the same order as the input; an element is null when no address was found.
+   * The input is read as the work progresses, at most a few chunks per worker ahead of the results.
+   */
+  public List<Address> cleanAll(Iterable<Address> addresses) throws IOException, ParseException {
+    Deque<Future<List<Address>>> pending = new ArrayDeque<>(maxPendingChunks);
+    List<Address> result = new ArrayList<>();
+    try {
+      List<Address> chunk = new ArrayList<>(chunkSize);
+      for (Address address : addresses) {
+        chunk.add(address);
+        if (chunk.size() == chunkSize) {
+          submit(chunk, pending, result);
+          chunk = new ArrayList<>(chunkSize);
+        }
+      }
+      if (!chunk.isEmpty()) {
+        submit(chunk, pending, result);
+      }
+      while (!pending.isEmpty()) {
+        result.addAll(get(pending.poll()));
+      }
+    } finally {
+      for (Future<List<Address>> cleaned : pending) {
+        cleaned.cancel(true);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Waits for the oldest chunk when the window is full, so its results are added in input order.
+   */
+  private void submit(List<Address> chunk, Deque<Future<List<Address>>> pending, List<Address> result)
+      throws IOException, ParseException {
+    if (pending.size() == maxPendingChunks) {
+      result.addAll(get(pending.poll()));
+    }
+    pending.add(executor.submit(new CleanChunk(chunk)));
+  }
+
+  /**
+   * Waits for the result, rethrowing the exceptions of a failed cleaning task as they were thrown.
+   */
+  static <T> T get(Future<T> cleaned) throws IOException, ParseException {
+    try {
+      return cleaned.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("interrupted while cleaning addresses");
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof IOException) {
+        throw (IOException) cause;
+      }
+      if (cause instanceof ParseException) {
+        throw (ParseException) cause;
+      }
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw new IOException(cause);
+    }
+  }
+
+  @Override
+  public void close() {
+    executor.shutdownNow();
+  }
+
+  private class CleanChunk implements Callable<List<Address>> {
+    private final List<Address> addresses;
+
+    private CleanChunk(List<Address> addresses) {
+      this.addresses = addresses;
+    }
+
+    @Override
+    public List<Address> call() throws IOException, ParseException {
+      return postcodeCheck.getAddresses(addresses);
+    }
+  }
+
+  static class WorkerThreadFactory implements ThreadFactory {
+    private final String namePrefix;
+    private final AtomicInteger count = new AtomicInteger();
+
+    WorkerThreadFactory(String namePrefix) {
+      this.namePrefix = namePrefix;
+    }
+
+    @Override
+    public Thread newThread(Runnable runnable) {
+      Thread thread = new Thread(runnable, namePrefix + count.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    }
+  }
+}
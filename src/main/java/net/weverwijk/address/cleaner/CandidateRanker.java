@@ -0,0 +1,128 @@
+package net.weverwijk.address.cleaner;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Picks the search candidate closest to the query, by the same edit distance as
+ * {@link Address#getLevenshteinDistance(Address)}. The query is case folded once; the distance to each candidate
+ * is computed within the best distance so far and given up as soon as it can no longer win.
+ * Not thread safe, use one per lookup.
+ */
+class CandidateRanker {
+  static final Set<String> FIELDS = new HashSet<>(Arrays.asList("postcode", "street", "city", "municipality"));
+
+  private final char[] postcode;
+  private final char[] street;
+  private final char[] city;
+  private int[] previous = new int[32];
+  private int[] current = new int[32];
+  private Address best;
+  private int bestDistance = Integer.MAX_VALUE;
+
+  CandidateRanker(Address query) {
+    postcode = fold(query.getPostcode());
+    street = fold(query.getStreet());
+    city = fold(query.getCity());
+  }
+
+  /**
+   * Keeps the candidate when it is strictly closer than the best one so far, so earlier candidates win ties.
+   */
+  void offer(Address candidate) {
+    int distance = distance(candidate, bestDistance - 1);
+    if (distance < bestDistance) {
+      best = candidate;
+      bestDistance = distance;
+    }
+  }
+
+  /**
+   * True once a candidate matched exactly, after which no other candidate can replace it.
+   */
+  boolean isExact() {
+    return bestDistance == 0;
+  }
+
+  Address getBest() {
+    return best;
+  }
+
+  /**
+   * Returns the distance to the candidate, or a value above max as soon as it is known to exceed max.
+   */
+  int distance(Address candidate, int max) {
+    int distance = distance(street, candidate.getStreet(), max);
+    if (distance > max) {
+      return distance;
+    }
+    distance += distance(postcode, candidate.getPostcode(), max - distance);
+    if (distance > max || city == null) {
+      return distance;
+    }
+    int remaining = max - distance;
+    int cityDistance = distance(city, candidate.getCity(), remaining);
+    if (cityDistance > 0) {
+      // the municipality only matters when it is closer than the city
+      int municipalityDistance = distance(city, candidate.getMunicipality(), Math.min(cityDistance - 1, remaining));
+      cityDistance = Math.min(cityDistance, municipalityDistance);
+    }
+    return distance + cityDistance;
+  }
+
+  private int distance(char[] query, String value, int max) {
+    if (query == null) {
+      return 0;
+    }
+    int queryLength = query.length;
+    int valueLength = value == null ? 0 : value.length();
+    if (Math.abs(queryLength - valueLength) > max) {
+      return max + 1;
+    }
+    if (valueLength == 0) {
+      return queryLength;
+    }
+    if (previous.length <= valueLength) {
+      previous = new int[valueLength + 1];
+      current = new int[valueLength + 1];
+    }
+    int[] previous = this.previous;
+    int[] current = this.current;
+    for (int j = 0; j <= valueLength; j++) {
+      previous[j] = j;
+    }
+    for (int i = 1; i <= queryLength; i++) {
+      char c = query[i - 1];
+      current[0] = i;
+      int rowMinimum = i;
+      for (int j = 1; j <= valueLength; j++) {
+        int cost = Character.toUpperCase(value.charAt(j - 1)) == c ? 0 : 1;
+        int cell = Math.min(Math.min(current[j - 1], previous[j]) + 1, previous[j - 1] + cost);
+        current[j] = cell;
+        if (cell < rowMinimum) {
+          rowMinimum = cell;
+        }
+      }
+      if (rowMinimum > max) {
+        return max + 1;
+      }
+      int[] swap = previous;
+      previous = current;
+      current = swap;
+    }
+    int distance = previous[valueLength];
+    return distance > max ? max + 1 : distance;
+  }
+
+  private static char[] fold(String value) {
+    if (value == null) {
+      return null;
+    }
+    char[] folded = new char[value.length()];
+    for (int i = 0; i < folded.length; i++) {
+      folded[i] = Character.toUpperCase(value.charAt(i));
+    }
+    return folded;
+  }
+}
@@ -0,0 +1,359 @@
+package net.weverwijk.address.cleaner;
+
+import au.com.bytecode.opencsv.CSVReader;
+import au.com.bytecode.opencsv.CSVWriter;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.lucene.queryparser.classic.ParseException;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Cleans a csv file into a new csv file without holding either in memory. A reader thread parses batches of rows and
+ * hands them to a pool of cleaning threads; the calling thread writes the results in input order. The queue between
+ * them is bounded, so a slow writer holds back the reader. Every output row is the input row followed by the
+ * cleaned address and a {@link Status}.
+ * <p>
+ * With a checkpoint file the pipeline regularly records how many rows and output bytes are done, and a later run
+ * with the same files resumes from there. The checkpoint is removed once the whole input is written.
+ */
+public class CsvCleaningPipeline implements Closeable {
+  private static final String[] CLEAN_COLUMNS = {"clean_postcode", "clean_street", "clean_housenumber",
+      "clean_housenumberaffix", "clean_city", "clean_municipality", "status"};
+  private static final String RECORDS_KEY = "records";
+  private static final String OUTPUT_BYTES_KEY = "outputBytes";
+  private static final Future<List<String[]>> END_OF_INPUT = new FutureTask<>(new Callable<List<String[]>>() {
+    @Override
+    public List<String[]> call() {
+      return null;
+    }
+  });
+
+  public enum Status {
+    /** answered from the postcode table */
+    MATCHED,
+    /** answered by a search in the index, in one go or by a stage of the {@link QueryCascade} */
+    FALLBACK,
+    NOT_FOUND
+  }
+
+  private final PostcodeCheck postcodeCheck;
+  private final CsvColumnMapping mapping;
+  private final int parallelism;
+  private final ExecutorService executor;
+  private int batchSize = 256;
+  private long checkpointInterval = 10000;
+  private char separator = ';';
+
+  public CsvCleaningPipeline(PostcodeCheck postcodeCheck) {
+    this(postcodeCheck, new CsvColumnMapping(), Runtime.getRuntime().availableProcessors());
+  }
+
+  public CsvCleaningPipeline(PostcodeCheck postcodeCheck, CsvColumnMapping mapping, int parallelism) {
+    if (parallelism < 1) {
+      throw new IllegalArgumentException("parallelism must be positive");
+    }
+    this.postcodeCheck = postcodeCheck;
+    this.mapping = mapping;
+    this.parallelism = parallelism;
+    this.executor = Executors.newFixedThreadPool(parallelism, new BatchCleaner.WorkerThreadFactory("csv-cleaner-"));
+  }
+
+  public int getBatchSize() {
+    return batchSize;
+  }
+
+  public void setBatchSize(int batchSize) {
+    this.batchSize = batchSize;
+  }
+
+  public long getCheckpointInterval() {
+    return checkpointInterval;
+  }
+
+  /**
+   * Number of rows written between two checkpoints; checkpoints are taken at batch boundaries.
+   */
+  public void setCheckpointInterval(long checkpointInterval) {
+    this.checkpointInterval = checkpointInterval;
+  }
+
+  public char getSeparator() {
+    return separator;
+  }
+
+  public void setSeparator(char separator) {
+    this.separator = separator;
+  }
+
+  /**
+   * Cleans input into output, both UTF-8, and returns the number of rows written. The checkpoint may be null to run
+   * without one.
+   */
+  public long clean(File input, File output, File checkpoint) throws IOException, ParseException {
+    long records = 0;
+    long outputBytes = 0;
+    if (checkpoint != null && checkpoint.exists()) {
+      Properties properties = new Properties();
+      try (InputStream in = new FileInputStream(checkpoint)) {
+        properties.load(in);
+      }
+      records = Long.parseLong(properties.getProperty(RECORDS_KEY));
+      outputBytes = Long.parseLong(properties.getProperty(OUTPUT_BYTES_KEY));
+    }
+
+    try (CSVReader reader = new CSVReader(new InputStreamReader(new FileInputStream(input), StandardCharsets.UTF_8), separator, '\"');
+         FileOutputStream out = openOutput(output, outputBytes);
+         CSVWriter writer = new CSVWriter(new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8)), separator, '\"')) {
+      String[] header = reader.readNext();
+      if (header == null) {
+        throw new IOException("no header in " + input);
+      }
+      Columns columns = new Columns(postcodeCheck.convertToColumnLookup(header), header.length);
+      if (outputBytes == 0) {
+        writer.writeNext(concat(header, CLEAN_COLUMNS, header.length));
+      }
+      for (long skipped = 0; skipped < records; skipped++) {
+        if (reader.readNext() == null) {
+          throw new IOException("checkpoint " + checkpoint + " is past the end of " + input);
+        }
+      }
+
+      BlockingQueue<Future<List<String[]>>> queue = new ArrayBlockingQueue<>(parallelism * 2);
+      Thread readerThread = new Thread(new ReadStage(reader, columns, queue), "csv-reader");
+      readerThread.setDaemon(true);
+      readerThread.start();
+      try {
+        long lastCheckpoint = records;
+        Future<List<String[]>> batch;
+        while ((batch = take(queue)) != END_OF_INPUT) {
+          List<String[]> rows = BatchCleaner.get(batch);
+          for (String[] row : rows) {
+            writer.writeNext(row);
+          }
+          records += rows.size();
+          if (checkpoint != null && records - lastCheckpoint >= checkpointInterval) {
+            writer.flush();
+            writeCheckpoint(checkpoint, records, out.getChannel().position());
+            lastCheckpoint = records;
+          }
+        }
+        writer.flush();
+      } finally {
+        stop(readerThread, queue);
+      }
+    }
+    if (checkpoint != null) {
+      Files.deleteIfExists(checkpoint.toPath());
+    }
+    return records;
+  }
+
+  private static Future<List<String[]>> take(BlockingQueue<Future<List<String[]>>> queue) throws InterruptedIOException {
+    try {
+      return queue.take();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("interrupted while cleaning addresses");
+    }
+  }
+
+  private static void stop(Thread readerThread, BlockingQueue<Future<List<String[]>>> queue) {
+    readerThread.interrupt();
+    boolean interrupted = false;
+    while (readerThread.isAlive()) {
+      try {
+        readerThread.join();
+      } catch (InterruptedException e) {
+        interrupted = true;
+      }
+    }
+    for (Future<List<String[]>> batch : queue) {
+      batch.cancel(true);
+    }
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private static FileOutputStream openOutput(File output, long outputBytes) throws IOException {
+    if (outputBytes == 0) {
+      return new FileOutputStream(output);
+    }
+    // drop whatever was written after the checkpoint
+    try (RandomAccessFile file = new RandomAccessFile(output, "rw")) {
+      if (file.length() < outputBytes) {
+        throw new IOException(output + " is shorter than its checkpoint");
+      }
+      file.setLength(outputBytes);
+    }
+    return new FileOutputStream(output, true);
+  }
+
+  private static void writeCheckpoint(File checkpoint, long records, long outputBytes) throws IOException {
+    Properties properties = new Properties();
+    properties.setProperty(RECORDS_KEY, Long.toString(records));
+    properties.setProperty(OUTPUT_BYTES_KEY, Long.toString(outputBytes));
+    File temporary = new File(checkpoint.getPath() + ".tmp");
+    try (OutputStream out = new FileOutputStream(temporary)) {
+      properties.store(out, null);
+    }
+    Files.move(temporary.toPath(), checkpoint.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  private static String[] concat(String[] line, String[] clean, int width) {
+    String[] row = Arrays.copyOf(line, width + clean.length);
+    System.arraycopy(clean, 0, row, width, clean.length);
+    return row;
+  }
+
+  @Override
+  public void close() {
+    executor.shutdownNow();
+  }
+
+  private class ReadStage implements Runnable {
+    private final CSVReader reader;
+    private final Columns columns;
+    private final BlockingQueue<Future<List<String[]>>> queue;
+
+    private ReadStage(CSVReader reader, Columns columns, BlockingQueue<Future<List<String[]>>> queue) {
+      this.reader = reader;
+      this.columns = columns;
+      this.queue = queue;
+    }
+
+    @Override
+    public void run() {
+      try {
+        try {
+          List<String[]> lines = new ArrayList<>(batchSize);
+          String[] line;
+          while ((line = reader.readNext()) != null) {
+            lines.add(line);
+            if (lines.size() == batchSize) {
+              queue.put(executor.submit(new CleanBatch(lines, columns)));
+              lines = new ArrayList<>(batchSize);
+            }
+          }
+          if (!lines.isEmpty()) {
+            queue.put(executor.submit(new CleanBatch(lines, columns)));
+          }
+        } catch (final IOException | RuntimeException | Error t) {
+          // hand the failure to the writer, in order, as a failed batch
+          FutureTask<List<String[]>> failed = new FutureTask<>(new Callable<List<String[]>>() {
+            @Override
+            public List<String[]> call() throws Exception {
+              if (t instanceof Error) {
+                throw (Error) t;
+              }
+              throw (Exception) t;
+            }
+          });
+          failed.run();
+          queue.put(failed);
+          return;
+        }
+        queue.put(END_OF_INPUT);
+      } catch (InterruptedException e) {
+        // the writer stopped early
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  private class CleanBatch implements Callable<List<String[]>> {
+    private final List<String[]> lines;
+    private final Columns columns;
+
+    private CleanBatch(List<String[]> lines, Columns columns) {
+      this.lines = lines;
+      this.columns = columns;
+    }
+
+    @Override
+    public List<String[]> call() throws IOException, ParseException {
+      List<Address> addresses = new ArrayList<>(lines.size());
+      for (String[] line : lines) {
+        addresses.add(columns.address(line));
+      }
+      List<Address> results = postcodeCheck.getAddresses(addresses);
+      List<String[]> rows = new ArrayList<>(lines.size());
+      for (int i = 0; i < lines.size(); i++) {
+        String[] line = lines.get(i);
+        Address cleaned = results.get(i);
+        Status status = cleaned == null ? Status.NOT_FOUND
+            : cleaned.getMatchSource() == MatchSource.POSTCODE_TABLE ? Status.MATCHED : Status.FALLBACK;
+        String[] clean = cleaned == null ? new String[]{null, null, null, null, null, null, status.name()}
+            : new String[]{cleaned.getPostcode(), cleaned.getStreet(), cleaned.getHouseNumber(),
+            cleaned.getHouseNumberAffix(), cleaned.getCity(), cleaned.getMunicipality(), status.name()};
+        rows.add(concat(line, clean, columns.width));
+      }
+      return rows;
+    }
+  }
+
+  private class Columns {
+    private final int width;
+    private final int postcode;
+    private final int city;
+    private final int municipality;
+    private final int street;
+    private final int houseNumber;
+    private final int houseNumberAffix;
+    private final int description;
+
+    private Columns(HashMap<String, Integer> header, int width) {
+      this.width = width;
+      postcode = column(header, mapping.getPostcode());
+      city = column(header, mapping.getCity());
+      municipality = column(header, mapping.getMunicipality());
+      street = column(header, mapping.getStreet());
+      houseNumber = column(header, mapping.getHouseNumber());
+      houseNumberAffix = column(header, mapping.getHouseNumberAffix());
+      description = column(header, mapping.getDescription());
+      if (Math.max(Math.max(postcode, street), description) < 0) {
+        throw new IllegalArgumentException("the input has none of the postcode, street and description columns");
+      }
+    }
+
+    private int column(HashMap<String, Integer> header, String name) {
+      Integer column = name == null ? null : header.get(name);
+      return column == null ? -1 : column;
+    }
+
+    private Address address(String[] line) {
+      return new Address(value(line, postcode), value(line, city), value(line, municipality), value(line, street),
+          value(line, houseNumber), value(line, houseNumberAffix), value(line, description));
+    }
+
+    private String value(String[] line, int column) {
+      return column >= 0 && column < line.length && StringUtils.isNotBlank(line[column]) ? line[column] : null;
+    }
+  }
+}
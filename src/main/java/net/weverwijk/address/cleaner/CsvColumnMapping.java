@@ -0,0 +1,18 @@
+package net.weverwijk.address.cleaner;
+
+import lombok.Data;
+
+/**
+ * Names the input columns {@link CsvCleaningPipeline} reads the parts of an {@link Address} from. Columns that are
+ * missing from the input header are left empty.
+ */
+@Data
+public class CsvColumnMapping {
+  private String postcode = "postcode";
+  private String city = "city";
+  private String municipality = "municipality";
+  private String street = "street";
+  private String houseNumber = "housenumber";
+  private String houseNumberAffix = "housenumberaffix";
+  private String description = "description";
+}
@@ -0,0 +1,15 @@
+package net.weverwijk.address.cleaner;
+
+import lombok.Data;
+
+/**
+ * Street, city and house number recognised in a free text description by {@link StreetDictionary}. Street and city
+ * are the lower case terms as indexed; every part may be null.
+ */
+@Data
+class DescriptionMatch {
+  private String street;
+  private String city;
+  private String houseNumber;
+  private String houseNumberAffix;
+}
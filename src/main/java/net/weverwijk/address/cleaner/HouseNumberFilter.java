@@ -0,0 +1,79 @@
+package net.weverwijk.address.cleaner;
+
+import org.apache.lucene.index.AtomicReader;
+import org.apache.lucene.index.AtomicReaderContext;
+import org.apache.lucene.index.DocValues;
+import org.apache.lucene.index.NumericDocValues;
+import org.apache.lucene.search.DocIdSet;
+import org.apache.lucene.search.FieldCacheDocIdSet;
+import org.apache.lucene.search.Filter;
+import org.apache.lucene.util.Bits;
+
+import java.io.IOException;
+
+/**
+ * Keeps the rows whose number range and odd/even type contain a house number, read from the doc values of a
+ * compact index. Filters without scoring, unlike the range and type clauses of the full schema.
+ */
+class HouseNumberFilter extends Filter {
+  private final int houseNumber;
+  private final boolean checkRange;
+
+  /**
+   * With checkRange false only the odd/even type is checked, the same as the required clause of the full schema.
+   */
+  HouseNumberFilter(int houseNumber, boolean checkRange) {
+    this.houseNumber = houseNumber;
+    this.checkRange = checkRange;
+  }
+
+  /**
+   * Returns null when the address has no numeric house number.
+   */
+  static HouseNumberFilter forAddress(Address address, boolean checkRange) {
+    if (address.getHouseNumber() == null) {
+      return null;
+    }
+    try {
+      return new HouseNumberFilter(Integer.parseInt(address.getHouseNumber()), checkRange);
+    } catch (NumberFormatException e) {
+      return null;
+    }
+  }
+
+  @Override
+  public DocIdSet getDocIdSet(AtomicReaderContext context, Bits acceptDocs) throws IOException {
+    AtomicReader reader = context.reader();
+    final NumericDocValues numberTypes = DocValues.getNumeric(reader, "numbertype");
+    final NumericDocValues minNumbers = DocValues.getNumeric(reader, "minnumber");
+    final NumericDocValues maxNumbers = DocValues.getNumeric(reader, "maxnumber");
+    return new FieldCacheDocIdSet(reader.maxDoc(), acceptDocs) {
+      @Override
+      protected boolean matchDoc(int doc) {
+        if (checkRange && (houseNumber < minNumbers.get(doc) || houseNumber > maxNumbers.get(doc))) {
+          return false;
+        }
+        return PostcodeTable.matchesNumberType((byte) numberTypes.get(doc), houseNumber);
+      }
+    };
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (!(o instanceof HouseNumberFilter)) {
+      return false;
+    }
+    HouseNumberFilter other = (HouseNumberFilter) o;
+    return houseNumber == other.houseNumber && checkRange == other.checkRange;
+  }
+
+  @Override
+  public int hashCode() {
+    return 31 * houseNumber + (checkRange ? 1 : 0);
+  }
+
+  @Override
+  public String toString() {
+    return "HouseNumberFilter(" + houseNumber + (checkRange ? ", range" : "") + ")";
+  }
+}
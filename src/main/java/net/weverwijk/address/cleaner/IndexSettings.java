@@ -0,0 +1,28 @@
+package net.weverwijk.address.cleaner;
+
+import lombok.Data;
+import org.apache.lucene.index.MergePolicy;
+import org.apache.lucene.index.TieredMergePolicy;
+
+/**
+ * Tuning knobs for building the postcode index in {@link PostcodeCheck#loadAddresses(String)}.
+ */
+@Data
+public class IndexSettings {
+  private int indexingThreads = Runtime.getRuntime().availableProcessors();
+  private int batchSize = 512;
+  private double ramBufferSizeMB = 64;
+  private MergePolicy mergePolicy = new TieredMergePolicy();
+  private boolean forceMerge = false;
+  /**
+   * Keeps the house number ranges and types in doc values only, and stores just the fields an {@link Address} is
+   * built from. Lookups then filter on house numbers instead of scoring them.
+   */
+  private boolean compactSchema = false;
+  /**
+   * Keeps postcode, street, city and municipality of every document in an in-memory {@link AddressTable}, so search
+   * candidates are read from there instead of the stored fields. Costs about 16 bytes per document plus the distinct
+   * names. Used when the first searcher is opened, so set it before loading the addresses.
+   */
+  private boolean addressTable = false;
+}
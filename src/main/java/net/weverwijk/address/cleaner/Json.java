@@ -0,0 +1,261 @@
+package net.weverwijk.address.cleaner;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Just enough JSON for the lookup service: parses objects, arrays, strings, numbers, booleans and null into maps,
+ * lists and plain values, and writes addresses. Malformed input gives an {@link IllegalArgumentException}.
+ */
+final class Json {
+  private final String text;
+  private int position;
+
+  private Json(String text) {
+    this.text = text;
+  }
+
+  static Object parse(String text) {
+    Json json = new Json(text);
+    Object value = json.value();
+    json.skipWhitespace();
+    if (json.position != text.length()) {
+      throw json.error("trailing characters");
+    }
+    return value;
+  }
+
+  /**
+   * Reads an address from a parsed object; numbers are accepted for the house number.
+   */
+  static Address toAddress(Object value) {
+    if (!(value instanceof Map)) {
+      throw new IllegalArgumentException("expected an address object");
+    }
+    Map<?, ?> fields = (Map<?, ?>) value;
+    return new Address(string(fields, "postcode"), string(fields, "city"), string(fields, "municipality"),
+        string(fields, "street"), string(fields, "houseNumber"), string(fields, "houseNumberAffix"),
+        string(fields, "description"));
+  }
+
+  private static String string(Map<?, ?> fields, String name) {
+    Object value = fields.get(name);
+    if (value instanceof Double && (Double) value == Math.rint((Double) value)) {
+      return Long.toString(((Double) value).longValue());
+    }
+    return value == null ? null : value.toString();
+  }
+
+  static void write(StringBuilder out, Address address) {
+    if (address == null) {
+      out.append("null");
+      return;
+    }
+    out.append('{');
+    field(out, "postcode", address.getPostcode()).append(',');
+    field(out, "street", address.getStreet()).append(',');
+    field(out, "houseNumber", address.getHouseNumber()).append(',');
+    field(out, "houseNumberAffix", address.getHouseNumberAffix()).append(',');
+    field(out, "city", address.getCity()).append(',');
+    field(out, "municipality", address.getMunicipality()).append(',');
+    field(out, "matchSource", address.getMatchSource() == null ? null : address.getMatchSource().name());
+    out.append('}');
+  }
+
+  private static StringBuilder field(StringBuilder out, String name, String value) {
+    writeString(out, name);
+    out.append(':');
+    if (value == null) {
+      return out.append("null");
+    }
+    return writeString(out, value);
+  }
+
+  static StringBuilder writeString(StringBuilder out, String value) {
+    out.append('"');
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      switch (c) {
+        case '"':
+          out.append("\\\"");
+          break;
+        case '\\':
+          out.append("\\\\");
+          break;
+        case '\n':
+          out.append("\\n");
+          break;
+        case '\r':
+          out.append("\\r");
+          break;
+        case '\t':
+          out.append("\\t");
+          break;
+        default:
+          if (c < 0x20) {
+            out.append(String.format("\\u%04x", (int) c));
+          } else {
+            out.append(c);
+          }
+      }
+    }
+    return out.append('"');
+  }
+
+  private Object value() {
+    skipWhitespace();
+    if (position >= text.length()) {
+      throw error("unexpected end");
+    }
+    char c = text.charAt(position);
+    switch (c) {
+      case '{':
+        return object();
+      case '[':
+        return array();
+      case '"':
+        return string();
+      case 't':
+        return literal("true", Boolean.TRUE);
+      case 'f':
+        return literal("false", Boolean.FALSE);
+      case 'n':
+        return literal("null", null);
+      default:
+        return number();
+    }
+  }
+
+  private Map<String, Object> object() {
+    Map<String, Object> result = new LinkedHashMap<>();
+    position++;
+    skipWhitespace();
+    if (peek('}')) {
+      return result;
+    }
+    do {
+      skipWhitespace();
+      if (position >= text.length() || text.charAt(position) != '"') {
+        throw error("expected a field name");
+      }
+      String name = string();
+      skipWhitespace();
+      expect(':');
+      result.put(name, value());
+      skipWhitespace();
+    } while (peek(','));
+    expect('}');
+    return result;
+  }
+
+  private List<Object> array() {
+    List<Object> result = new ArrayList<>();
+    position++;
+    skipWhitespace();
+    if (peek(']')) {
+      return result;
+    }
+    do {
+      result.add(value());
+      skipWhitespace();
+    } while (peek(','));
+    expect(']');
+    return result;
+  }
+
+  private String string() {
+    StringBuilder result = new StringBuilder();
+    position++;
+    while (position < text.length()) {
+      char c = text.charAt(position++);
+      if (c == '"') {
+        return result.toString();
+      }
+      if (c != '\\') {
+        result.append(c);
+        continue;
+      }
+      if (position >= text.length()) {
+        break;
+      }
+      char escaped = text.charAt(position++);
+      switch (escaped) {
+        case 'b':
+          result.append('\b');
+          break;
+        case 'f':
+          result.append('\f');
+          break;
+        case 'n':
+          result.append('\n');
+          break;
+        case 'r':
+          result.append('\r');
+          break;
+        case 't':
+          result.append('\t');
+          break;
+        case 'u':
+          if (position + 4 > text.length()) {
+            throw error("short unicode escape");
+          }
+          try {
+            result.append((char) Integer.parseInt(text.substring(position, position + 4), 16));
+          } catch (NumberFormatException e) {
+            throw error("bad unicode escape");
+          }
+          position += 4;
+          break;
+        default:
+          result.append(escaped);
+      }
+    }
+    throw error("unterminated string");
+  }
+
+  private Object number() {
+    int start = position;
+    while (position < text.length() && "+-0123456789.eE".indexOf(text.charAt(position)) >= 0) {
+      position++;
+    }
+    try {
+      return Double.valueOf(text.substring(start, position));
+    } catch (NumberFormatException e) {
+      throw error("unexpected character");
+    }
+  }
+
+  private Object literal(String literal, Object value) {
+    if (!text.startsWith(literal, position)) {
+      throw error("unexpected character");
+    }
+    position += literal.length();
+    return value;
+  }
+
+  private boolean peek(char c) {
+    if (position < text.length() && text.charAt(position) == c) {
+      position++;
+      return true;
+    }
+    return false;
+  }
+
+  private void expect(char c) {
+    if (!peek(c)) {
+      throw error("expected '" + c + "'");
+    }
+  }
+
+  private void skipWhitespace() {
+    while (position < text.length() && Character.isWhitespace(text.charAt(position))) {
+      position++;
+    }
+  }
+
+  private IllegalArgumentException error(String message) {
+    return new IllegalArgumentException(message + " at position " + position);
+  }
+}
@@ -0,0 +1,48 @@
+package net.weverwijk.address.cleaner;
+
+import java.beans.ConstructorProperties;
+
+/**
+ * Latency summary in microseconds, as published by {@link PostcodeCheckMetricsMXBean}.
+ */
+public class LatencySnapshot {
+  private final long count;
+  private final double meanMicros;
+  private final double p50Micros;
+  private final double p99Micros;
+  private final double maxMicros;
+
+  @ConstructorProperties({"count", "meanMicros", "p50Micros", "p99Micros", "maxMicros"})
+  public LatencySnapshot(long count, double meanMicros, double p50Micros, double p99Micros, double maxMicros) {
+    this.count = count;
+    this.meanMicros = meanMicros;
+    this.p50Micros = p50Micros;
+    this.p99Micros = p99Micros;
+    this.maxMicros = maxMicros;
+  }
+
+  static LatencySnapshot of(LatencyHistogram histogram) {
+    return new LatencySnapshot(histogram.getCount(), histogram.getMean() / 1000d,
+        histogram.getPercentile(50) / 1000d, histogram.getPercentile(99) / 1000d, histogram.getMax() / 1000d);
+  }
+
+  public long getCount() {
+    return count;
+  }
+
+  public double getMeanMicros() {
+    return meanMicros;
+  }
+
+  public double getP50Micros() {
+    return p50Micros;
+  }
+
+  public double getP99Micros() {
+    return p99Micros;
+  }
+
+  public double getMaxMicros() {
+    return maxMicros;
+  }
+}
@@ -0,0 +1,26 @@
+package net.weverwijk.address.cleaner;
+
+import lombok.Data;
+
+/**
+ * Settings of an {@link AddressLookupServer}.
+ */
+@Data
+public class LookupServerSettings {
+  /** address to listen on; the loopback address by default, 0.0.0.0 for all interfaces */
+  private String bindAddress = "127.0.0.1";
+  /** port to listen on; 0 picks a free one */
+  private int port = 8080;
+  /** requests handled at the same time, at least one; more are refused with 429 Too Many Requests */
+  private int maxInFlight = 256;
+  /** addresses accepted in one bulk request */
+  private int maxBulkSize = 1000;
+  /** bytes accepted in one request body; larger bodies are refused with 413 Payload Too Large before parsing */
+  private int maxBodyBytes = 1 << 20;
+  /** single lookups grouped into one batch at most */
+  private int batchSize = 32;
+  /** how long a batch waits for more single lookups after the first one arrived */
+  private long batchWindowMicros = 500;
+  /** threads running the batches */
+  private int lookupThreads = Runtime.getRuntime().availableProcessors();
+}
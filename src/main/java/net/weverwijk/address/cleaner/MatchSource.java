@@ -0,0 +1,17 @@
+package net.weverwijk.address.cleaner;
+
+/**
+ * Tells which lookup path produced an address returned by {@link PostcodeCheck#getAddress(Address)}.
+ */
+public enum MatchSource {
+  /** exact postcode and house number, answered from the in-memory postcode table */
+  POSTCODE_TABLE,
+  /** answered by a search in the Lucene index, with all clauses at once */
+  INDEX,
+  /** answered by the first stage of the {@link QueryCascade}: exact terms only */
+  EXACT,
+  /** answered by the second stage of the {@link QueryCascade}: exact terms plus analyzed street and description */
+  ANALYZED,
+  /** answered by the last stage of the {@link QueryCascade}, which adds fuzzy terms */
+  FUZZY
+}
@@ -0,0 +1,195 @@
+package net.weverwijk.address.cleaner;
+
+import org.apache.lucene.queryparser.classic.ParseException;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Groups single lookups from many threads into small batches for {@link PostcodeCheck#getAddresses(List)}. A batch
+ * closes when it is full or when the window after its first lookup has passed, whichever comes first.
+ */
+class MicroBatcher implements Closeable {
+  private final PostcodeCheck postcodeCheck;
+  private final int batchSize;
+  private final long windowNanos;
+  private final BlockingQueue<Pending> queue = new LinkedBlockingQueue<>();
+  private final ExecutorService workers;
+  private final Thread dispatcher;
+  private volatile boolean closed;
+
+  MicroBatcher(PostcodeCheck postcodeCheck, int batchSize, long windowNanos, int threads) {
+    this.postcodeCheck = postcodeCheck;
+    this.batchSize = batchSize;
+    this.windowNanos = windowNanos;
+    this.workers = Executors.newFixedThreadPool(threads, new BatchCleaner.WorkerThreadFactory("address-lookup-"));
+    this.dispatcher = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        dispatch();
+      }
+    }, "address-lookup-batcher");
+    dispatcher.setDaemon(true);
+    dispatcher.start();
+  }
+
+  /**
+   * Waits for the lookup to be done as part of a batch; fails once the batcher is closed.
+   */
+  Address getAddress(Address address) throws IOException, ParseException {
+    if (closed) {
+      throw closedException();
+    }
+    Pending pending = new Pending(address);
+    queue.add(pending);
+    if (closed) {
+      // close may have drained the queue before this lookup was added
+      failQueued();
+    }
+    try {
+      pending.done.await();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("interrupted while looking up an address");
+    }
+    Throwable failure = pending.failure;
+    if (failure == null) {
+      return pending.result;
+    }
+    if (failure instanceof IOException) {
+      throw (IOException) failure;
+    }
+    if (failure instanceof ParseException) {
+      throw (ParseException) failure;
+    }
+    if (failure instanceof RuntimeException) {
+      throw (RuntimeException) failure;
+    }
+    if (failure instanceof Error) {
+      throw (Error) failure;
+    }
+    throw new IOException(failure);
+  }
+
+  private void dispatch() {
+    List<Pending> batch = null;
+    try {
+      while (true) {
+        batch = new ArrayList<>(batchSize);
+        batch.add(queue.take());
+        queue.drainTo(batch, batchSize - 1);
+        long deadline = System.nanoTime() + windowNanos;
+        while (batch.size() < batchSize) {
+          Pending next = queue.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+          if (next == null) {
+            break;
+          }
+          batch.add(next);
+        }
+        workers.execute(new RunBatch(batch));
+        batch = null;
+      }
+    } catch (InterruptedException | RejectedExecutionException e) {
+      // closed, while collecting a batch or handing it over
+      if (batch != null) {
+        fail(batch);
+      }
+    }
+  }
+
+  /**
+   * Fails the lookups that are queued, collected into a batch or waiting for a worker, and any that come in later.
+   */
+  @Override
+  public void close() {
+    closed = true;
+    dispatcher.interrupt();
+    for (Runnable notStarted : workers.shutdownNow()) {
+      fail(((RunBatch) notStarted).batch);
+    }
+    failQueued();
+  }
+
+  private void failQueued() {
+    Pending pending;
+    while ((pending = queue.poll()) != null) {
+      pending.fail(closedException());
+    }
+  }
+
+  private static void fail(List<Pending> batch) {
+    for (Pending pending : batch) {
+      pending.fail(closedException());
+    }
+  }
+
+  private static IOException closedException() {
+    return new IOException("lookup service closed");
+  }
+
+  private class RunBatch implements Runnable {
+    private final List<Pending> batch;
+
+    private RunBatch(List<Pending> batch) {
+      this.batch = batch;
+    }
+
+    @Override
+    public void run() {
+      List<Address> addresses = new ArrayList<>(batch.size());
+      for (Pending pending : batch) {
+        addresses.add(pending.address);
+      }
+      try {
+        List<Address> results = postcodeCheck.getAddresses(addresses);
+        for (int i = 0; i < batch.size(); i++) {
+          batch.get(i).complete(results.get(i));
+        }
+      } catch (Throwable t) {
+        if (batch.size() == 1) {
+          batch.get(0).fail(t);
+          return;
+        }
+        // one bad input must not fail the lookups it happened to be batched with, so each is retried on its own
+        for (Pending pending : batch) {
+          try {
+            pending.complete(postcodeCheck.getAddress(pending.address));
+          } catch (Throwable e) {
+            pending.fail(e);
+          }
+        }
+      }
+    }
+  }
+
+  private static class Pending {
+    private final Address address;
+    private final CountDownLatch done = new CountDownLatch(1);
+    private volatile Address result;
+    private volatile Throwable failure;
+
+    private Pending(Address address) {
+      this.address = address;
+    }
+
+    private void complete(Address result) {
+      this.result = result;
+      done.countDown();
+    }
+
+    private void fail(Throwable failure) {
+      this.failure = failure;
+      done.countDown();
+    }
+  }
+}
@@ -7,87 +7,315 @@ import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.analysis.miscellaneous.PerFieldAnalyzerWrapper;
 import org.apache.lucene.analysis.nl.DutchAnalyzer;
 import org.apache.lucene.document.Document;
-import org.apache.lucene.document.Field;
-import org.apache.lucene.document.IntField;
-import org.apache.lucene.document.TextField;
 import org.apache.lucene.index.DirectoryReader;
-import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexCommit;
 import org.apache.lucene.index.IndexWriter;
 import org.apache.lucene.index.IndexWriterConfig;
-import org.apache.lucene.index.Term;
-import org.apache.lucene.queries.BooleanFilter;
 import org.apache.lucene.queryparser.classic.ParseException;
-import org.apache.lucene.queryparser.classic.QueryParser;
-import org.apache.lucene.search.BooleanClause;
-import org.apache.lucene.search.BooleanQuery;
-import org.apache.lucene.search.FuzzyQuery;
+import org.apache.lucene.search.Filter;
 import org.apache.lucene.search.IndexSearcher;
-import org.apache.lucene.search.NumericRangeQuery;
 import org.apache.lucene.search.Query;
 import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.SearcherManager;
 import org.apache.lucene.search.TopDocs;
 import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.MMapDirectory;
 import org.apache.lucene.store.RAMDirectory;
 import org.apache.lucene.util.Version;
 
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileReader;
 import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
 
-public class PostcodeCheck {
+/**
+ * Looks up addresses in an index of the postcode data. Once loaded, {@link #getAddress(Address)} may be called from
+ * many threads at the same time; see {@link BatchCleaner} for cleaning large batches in parallel.
+ */
+public class PostcodeCheck implements Closeable {
 
   private static final Version version = Version.LUCENE_4_10_2;
+  private static final int SEARCH_LIMIT = 20;
+  // bump whenever the fields written by loadAddresses change, so persisted indexes get rebuilt
+  private static final String SCHEMA_VERSION = "2";
+  private static final String COMPACT_SCHEMA_VERSION = SCHEMA_VERSION + "-compact";
+  private static final String SCHEMA_VERSION_KEY = "schemaVersion";
+  private static final String SOURCE_CHECKSUM_KEY = "sourceChecksum";
+  private static final String APPLIED_DELTAS_KEY = "appliedDeltas";
+
   private final Directory index;
-  private final PerFieldAnalyzerWrapper analyzer;
+  private volatile Analysis analysis;
+  private final Thread shutdownHook;
+  private volatile SearcherManager searcherManager;
+  private IndexSettings indexSettings = new IndexSettings();
+  private volatile AddressCache cache;
+  private volatile PostcodeCheckListener listener;
+  private volatile QueryCascade queryCascade;
 
 
   public PostcodeCheck() {
-    index = new RAMDirectory();
-    HashMap<String, Analyzer> analyzers = new HashMap<>();
-    analyzers.put("complete", new DutchAnalyzer());
-    analyzers.put("streetAnalyzed", new DutchAnalyzer());
-    analyzer = new PerFieldAnalyzerWrapper(new SimpleLowerCaseKeywordAnalyzer(), analyzers);
+    this(new RAMDirectory());
+  }
+
+  /**
+   * Keeps the index in the given directory, so it survives restarts. The index is memory mapped and
+   * only rebuilt by {@link #loadAddresses(String)} when the source file has changed.
+   */
+  public PostcodeCheck(File indexDirectory) throws IOException {
+    this(new MMapDirectory(indexDirectory));
+  }
+
+  private PostcodeCheck(final Directory index) {
+    this.index = index;
+    this.analysis = new Analysis(AddressSynonyms.current());
 
-    Runtime.getRuntime().addShutdownHook(new Thread() {
+    shutdownHook = new Thread() {
       public void run() {
         try {
-          index.close();
+          closeIndex();
         } catch (IOException e) {
           e.printStackTrace();
         }
       }
-    });
+    };
+    Runtime.getRuntime().addShutdownHook(shutdownHook);
   }
 
-  public void loadAddresses(String fileName) throws IOException {
-    CSVReader csvReader = new CSVReader(new FileReader(fileName), ';', '\"');
+  /**
+   * Releases the index right away instead of at JVM shutdown.
+   */
+  @Override
+  public void close() throws IOException {
+    Runtime.getRuntime().removeShutdownHook(shutdownHook);
+    closeIndex();
+  }
+
+  private void closeIndex() throws IOException {
+    if (searcherManager != null) {
+      searcherManager.close();
+    }
+    index.close();
+  }
+
+  public IndexSettings getIndexSettings() {
+    return indexSettings;
+  }
+
+  public void setIndexSettings(IndexSettings indexSettings) {
+    this.indexSettings = indexSettings;
+  }
+
+  public AddressCache getCache() {
+    return cache;
+  }
+
+  /**
+   * Puts a result cache in front of {@link #getAddress(Address)}; null disables caching.
+   */
+  public void setCache(AddressCache cache) {
+    this.cache = cache;
+  }
+
+  public PostcodeCheckListener getListener() {
+    return listener;
+  }
+
+  /**
+   * Reports timings and counters to the given listener; null switches measuring off.
+   */
+  public void setListener(PostcodeCheckListener listener) {
+    this.listener = listener;
+  }
+
+  public QueryCascade getQueryCascade() {
+    return queryCascade;
+  }
+
+  /**
+   * Searches the index in stages of increasing cost; null, the default, searches with all clauses at once.
+   */
+  public void setQueryCascade(QueryCascade queryCascade) {
+    this.queryCascade = queryCascade;
+  }
+
+  /**
+   * Loads the addresses, rebuilding the index when the file, the index settings or the
+   * {@link AddressSynonyms#current()} rules changed. The rules are taken once, the whole build and the lookups on it
+   * use them until the next load, also when the current rules are replaced meanwhile.
+   */
+  public synchronized void loadAddresses(String fileName) throws IOException {
+    long start = System.nanoTime();
+    AddressSynonyms synonyms = AddressSynonyms.current();
+    Analysis analysis = synonyms == this.analysis.synonyms ? this.analysis : new Analysis(synonyms);
+    String checksum = checksum(fileName);
+    if (!isIndexUpToDate(checksum, analysis)) {
+      try (CSVReader csvReader = new CSVReader(new FileReader(fileName), ';', '\"')) {
+        buildIndex(csvReader, checksum, analysis);
+      }
+    }
+    indexChanged(start, analysis);
+  }
+
+  /**
+   * Applies a change file to the loaded index instead of rebuilding it. The file has the columns of the postcode
+   * csv plus an "action" column of add, change or delete; rows are keyed on postcode and number range, so a row
+   * whose range changes is a delete plus an add. Lookups keep using the previous searcher until the changes are
+   * committed, and then see all of them at once. A change file that was already applied is skipped. The changes are
+   * normalized with the synonym rules of the loaded index.
+   */
+  public synchronized void applyDelta(String fileName) throws IOException {
+    long start = System.nanoTime();
+    if (!DirectoryReader.indexExists(index)) {
+      throw new IllegalStateException("no index to apply " + fileName + " to, load the addresses first");
+    }
+    Analysis analysis = this.analysis;
+    Map<String, String> commitData = lastCommitData();
+    if (!schemaVersion(analysis).equals(commitData.get(SCHEMA_VERSION_KEY))) {
+      throw new IllegalStateException("the index was built with other index settings or synonyms, load the addresses first");
+    }
+    String checksum = checksum(fileName);
+    String appliedDeltas = commitData.get(APPLIED_DELTAS_KEY);
+    if (appliedDeltas == null || !Arrays.asList(appliedDeltas.split(",")).contains(checksum)) {
+      try (CSVReader csvReader = new CSVReader(new FileReader(fileName), ';', '\"')) {
+        HashMap<String, String> newCommitData = new HashMap<>(commitData);
+        newCommitData.put(APPLIED_DELTAS_KEY, appliedDeltas == null ? checksum : appliedDeltas + "," + checksum);
+        updateIndex(csvReader, newCommitData, analysis);
+      }
+    }
+    indexChanged(start, analysis);
+  }
+
+  private void indexChanged(long start, Analysis analysis) throws IOException {
+    refreshSearcher();
+    this.analysis = analysis;
+    // after the switch, so results of lookups that still used the previous index or rules are not stored
+    AddressCache cache = this.cache;
+    if (cache != null) {
+      cache.invalidateAll();
+    }
+    PostcodeCheckListener listener = this.listener;
+    if (listener != null) {
+      listener.indexLoaded(numDocs(), indexSize(), System.nanoTime() - start);
+    }
+  }
+
+  private int numDocs() throws IOException {
+    IndexSearcher searcher = searcherManager.acquire();
+    try {
+      return searcher.getIndexReader().numDocs();
+    } finally {
+      searcherManager.release(searcher);
+    }
+  }
+
+  private long indexSize() throws IOException {
+    long size = 0;
+    for (String file : index.listAll()) {
+      size += index.fileLength(file);
+    }
+    return size;
+  }
+
+  private synchronized void refreshSearcher() throws IOException {
+    if (searcherManager == null) {
+      searcherManager = new SearcherManager(index, new AddressSearcher.Factory(indexSettings.isAddressTable()));
+    } else {
+      searcherManager.maybeRefreshBlocking();
+    }
+  }
+
+  private SearcherManager searcherManager() throws IOException {
+    if (searcherManager == null) {
+      refreshSearcher();
+    }
+    return searcherManager;
+  }
+
+  private void buildIndex(CSVReader csvReader, String checksum, Analysis analysis) throws IOException {
+    HashMap<String, Integer> header = convertToColumnLookup(csvReader.readNext());
+
+    IndexWriter writer = new IndexWriter(index, writerConfig(IndexWriterConfig.OpenMode.CREATE, analysis));
+    try {
+      new AddressIndexer(writer, indexSettings).index(csvReader, header);
+      if (indexSettings.isForceMerge()) {
+        writer.forceMerge(1);
+      }
+      HashMap<String, String> commitData = new HashMap<>();
+      commitData.put(SCHEMA_VERSION_KEY, schemaVersion(analysis));
+      commitData.put(SOURCE_CHECKSUM_KEY, checksum);
+      writer.setCommitData(commitData);
+      writer.commit();
+      writer.close();
+    } catch (IOException | RuntimeException e) {
+      writer.rollback();
+      throw e;
+    }
+  }
+
+  private void updateIndex(CSVReader csvReader, Map<String, String> commitData, Analysis analysis) throws IOException {
     HashMap<String, Integer> header = convertToColumnLookup(csvReader.readNext());
 
-    IndexWriterConfig config = new IndexWriterConfig(version, analyzer)
-        .setOpenMode(IndexWriterConfig.OpenMode.CREATE);
-
-    IndexWriter writer = new IndexWriter(index, config);
-    String[] nextLine;
-    while ((nextLine = csvReader.readNext()) != null) {
-      Document doc = new Document();
-      String postcode = nextLine[header.get("postcode")];
-      String city = nextLine[header.get("city")];
-      String municipality = nextLine[header.get("municipality")];
-      String street = nextLine[header.get("street")];
-      doc.add(new TextField("postcode", postcode, Field.Store.YES));
-      doc.add(new TextField("street", street, Field.Store.YES));
-      doc.add(new TextField("streetAnalyzed", street, Field.Store.YES));
-      doc.add(new TextField("city", city, Field.Store.YES));
-      doc.add(new TextField("municipality", municipality, Field.Store.YES));
-      doc.add(new TextField("numbertype", nextLine[header.get("numbertype")], Field.Store.YES));
-      doc.add(new IntField("minnumber", Integer.parseInt(nextLine[header.get("minnumber")]), Field.Store.YES));
-      doc.add(new IntField("maxnumber", Integer.parseInt(nextLine[header.get("maxnumber")]), Field.Store.YES));
-      doc.add(new TextField("complete", String.format("%s %s %s %s", postcode, street, city, municipality), Field.Store.YES));
-      writer.addDocument(doc);
-    }
-    writer.commit();
-    writer.close();
+    IndexWriter writer = new IndexWriter(index, writerConfig(IndexWriterConfig.OpenMode.APPEND, analysis));
+    try {
+      new AddressIndexer(writer, indexSettings).applyDelta(csvReader, header);
+      writer.setCommitData(commitData);
+      writer.commit();
+      writer.close();
+    } catch (IOException | RuntimeException e) {
+      writer.rollback();
+      throw e;
+    }
+  }
+
+  private IndexWriterConfig writerConfig(IndexWriterConfig.OpenMode openMode, Analysis analysis) {
+    return new IndexWriterConfig(version, analysis.analyzer)
+        .setOpenMode(openMode)
+        .setRAMBufferSizeMB(indexSettings.getRamBufferSizeMB())
+        .setMergePolicy(indexSettings.getMergePolicy())
+        .setMaxThreadStates(Math.max(indexSettings.getIndexingThreads(), IndexWriterConfig.DEFAULT_MAX_THREAD_STATES));
+  }
+
+  private Map<String, String> lastCommitData() throws IOException {
+    List<IndexCommit> commits = DirectoryReader.listCommits(index);
+    return commits.get(commits.size() - 1).getUserData();
+  }
 
+  private boolean isIndexUpToDate(String checksum, Analysis analysis) throws IOException {
+    if (!DirectoryReader.indexExists(index)) {
+      return false;
+    }
+    Map<String, String> commitData = lastCommitData();
+    return schemaVersion(analysis).equals(commitData.get(SCHEMA_VERSION_KEY)) && checksum.equals(commitData.get(SOURCE_CHECKSUM_KEY));
+  }
+
+  /**
+   * The schema and the synonym rules the index terms were normalized with.
+   */
+  private String schemaVersion(Analysis analysis) {
+    String schema = indexSettings.isCompactSchema() ? COMPACT_SCHEMA_VERSION : SCHEMA_VERSION;
+    return schema + "-synonyms-" + analysis.synonyms.getVersion();
+  }
+
+  private String checksum(String fileName) throws IOException {
+    CRC32 crc = new CRC32();
+    long length = 0;
+    byte[] buffer = new byte[64 * 1024];
+    try (InputStream in = new FileInputStream(fileName)) {
+      int read;
+      while ((read = in.read(buffer)) != -1) {
+        crc.update(buffer, 0, read);
+        length += read;
+      }
+    }
+    return Long.toHexString(crc.getValue()) + "-" + length;
   }
 
   public Address getAddress(Address address) throws IOException, ParseException {
@@ -95,68 +323,184 @@ public class PostcodeCheck {
   }
 
   public Address getAddress(Address address, boolean debug) throws IOException, ParseException {
-    int limit = 20;
-    Address result;
-
-    try (IndexReader reader = DirectoryReader.open(index)) {
-      BooleanQuery booleanQuery = new BooleanQuery();
+    AddressCache cache = this.cache;
+    if (cache == null || debug) {
+      return lookup(address, debug);
+    }
+    AddressCache.Lookup cached = cache.get(address);
+    if (cached.found) {
+      return cached.address;
+    }
+    Address result = lookup(address, false);
+    cache.put(address, result, cached);
+    return result;
+  }
 
-      if (address.getPostcode() != null) {
-        Query postcode = new LowerCaseTermQuery(new Term("postcode", address.getPostcode()));
-        postcode.setBoost(20F);
-        booleanQuery.add(postcode, BooleanClause.Occur.SHOULD);
+  /**
+   * Looks up a batch of addresses against one searcher, so they all see the same index; the results are in input
+   * order, null where no address was found.
+   */
+  public List<Address> getAddresses(List<Address> addresses) throws IOException, ParseException {
+    AddressCache cache = this.cache;
+    // all cache lookups before the searcher is acquired, so a reload during the batch rejects its results as stale
+    AddressCache.Lookup[] cached = new AddressCache.Lookup[addresses.size()];
+    if (cache != null) {
+      for (int i = 0; i < cached.length; i++) {
+        cached[i] = cache.get(addresses.get(i));
       }
-      if (address.getStreet() != null) {
-        LowerCaseTermQuery streetTerm = new LowerCaseTermQuery(new Term("street", address.getStreet()));
-        streetTerm.setBoost(30F);
-        booleanQuery.add(streetTerm, BooleanClause.Occur.SHOULD);
-        booleanQuery.add(new FuzzyQuery(new Term("street", address.getStreet())), BooleanClause.Occur.SHOULD);
-
-        QueryParser qp = new QueryParser("streetAnalyzed", new DutchAnalyzer());
-        booleanQuery.add(qp.parse(QueryParser.escape(address.getStreet())), BooleanClause.Occur.SHOULD);
+    }
+    List<Address> results = new ArrayList<>(addresses.size());
+    SearcherManager manager = searcherManager();
+    AddressSearcher searcher = (AddressSearcher) manager.acquire();
+    try {
+      for (int i = 0; i < cached.length; i++) {
+        if (cached[i] != null && cached[i].found) {
+          results.add(cached[i].address);
+          continue;
+        }
+        Address address = addresses.get(i);
+        Address result = lookup(address, false, searcher);
+        if (cached[i] != null) {
+          cache.put(address, result, cached[i]);
+        }
+        results.add(result);
       }
-      if (address.getCity() != null) {
-        booleanQuery.add(new FuzzyQuery(new Term("city", address.getCity())), BooleanClause.Occur.SHOULD);
-        LowerCaseTermQuery cityTerm = new LowerCaseTermQuery(new Term("city", address.getCity()));
-        cityTerm.setBoost(30F);
-        booleanQuery.add(cityTerm, BooleanClause.Occur.SHOULD);
+    } finally {
+      manager.release(searcher);
+    }
+    return results;
+  }
+
+  private Address lookup(Address address, boolean debug) throws IOException {
+    SearcherManager manager = searcherManager();
+    AddressSearcher searcher = (AddressSearcher) manager.acquire();
+    try {
+      return lookup(address, debug, searcher);
+    } finally {
+      manager.release(searcher);
+    }
+  }
+
+  private Address lookup(Address address, boolean debug, AddressSearcher searcher) throws IOException {
+    Address result = debug ? null : searcher.getPostcodeTable().find(address);
+    if (result != null) {
+      result.setMatchSource(MatchSource.POSTCODE_TABLE);
+    } else {
+      Analysis analysis = this.analysis;
+      DescriptionMatch match = matchDescription(address, searcher, analysis);
+      address = withDescriptionHouseNumber(address, match);
+      QueryCascade cascade = this.queryCascade;
+      result = cascade != null
+          ? searchCascade(address, match, searcher, analysis, cascade, debug)
+          : searchIndex(address, match, searcher, analysis, MatchSource.INDEX, null, debug, null);
+    }
+    if (result != null) {
+      addHouseNumber(address, result);
+      completeHouseNumber(result);
+    }
+    PostcodeCheckListener listener = this.listener;
+    if (listener != null) {
+      listener.lookupCompleted(result != null ? result.getMatchSource() : null);
+    }
+    return result;
+  }
+
+  private Address searchCascade(Address address, DescriptionMatch match, AddressSearcher searcher, Analysis analysis,
+                                QueryCascade cascade, boolean debug) throws IOException {
+    Address result = null;
+    for (MatchSource stage : new MatchSource[]{MatchSource.EXACT, MatchSource.ANALYZED, MatchSource.FUZZY}) {
+      if (!analysis.queryBuilder.hasClauses(address, match, stage)) {
+        continue;
       }
-      if (address.getMunicipality() != null) {
-        booleanQuery.add(new FuzzyQuery(new Term("municipality", address.getMunicipality())), BooleanClause.Occur.SHOULD);
-        LowerCaseTermQuery municipalityTerm = new LowerCaseTermQuery(new Term("municipality", address.getMunicipality()));
-        municipalityTerm.setBoost(5F);
-        booleanQuery.add(municipalityTerm, BooleanClause.Occur.SHOULD);
+      List<ScoredAddress> candidates = new ArrayList<>();
+      Address found = searchIndex(address, match, searcher, analysis, stage, cascade, debug, candidates);
+      if (found != null) {
+        result = found;
+        boolean exactMatch = new CandidateRanker(address).distance(found, 0) == 0;
+        if (cascade.isConfident(candidates, exactMatch)) {
+          break;
+        }
       }
+    }
+    return result;
+  }
+
+  /**
+   * Returns the index candidates for the address, highest score first, without the postcode table and without
+   * picking one. Each candidate carries the house number of the input, or of its description.
+   */
+  public List<ScoredAddress> searchCandidates(Address address) throws IOException {
+    List<ScoredAddress> candidates = new ArrayList<>();
+    SearcherManager manager = searcherManager();
+    AddressSearcher searcher = (AddressSearcher) manager.acquire();
+    try {
+      Analysis analysis = this.analysis;
+      DescriptionMatch match = matchDescription(address, searcher, analysis);
+      address = withDescriptionHouseNumber(address, match);
+      searchIndex(address, match, searcher, analysis, MatchSource.INDEX, null, false, candidates);
+    } finally {
+      manager.release(searcher);
+    }
+    for (ScoredAddress candidate : candidates) {
+      candidate.getAddress().setMatchSource(MatchSource.INDEX);
+      addHouseNumber(address, candidate.getAddress());
+    }
+    return candidates;
+  }
+
+  private DescriptionMatch matchDescription(Address address, AddressSearcher searcher, Analysis analysis) {
+    if (address.getStreet() == null && StringUtils.isNotBlank(address.getDescription())) {
+      return searcher.getStreetDictionary().find(analysis.synonyms.normalizeStreet(address.getDescription()));
+    }
+    return null;
+  }
+
+  private Address withDescriptionHouseNumber(Address address, DescriptionMatch match) {
+    if (match != null && match.getHouseNumber() != null && address.getHouseNumber() == null) {
+      // search with the house number from the description, and hand it on to the result
+      address = new Address(address);
+      address.setHouseNumber(match.getHouseNumber());
+      address.setHouseNumberAffix(match.getHouseNumberAffix());
+    }
+    return address;
+  }
+
+  private Address searchIndex(Address address, DescriptionMatch match, AddressSearcher searcher, Analysis analysis,
+                              MatchSource stage, QueryCascade cascade, boolean debug, List<ScoredAddress> candidates)
+      throws IOException {
+    PostcodeCheckListener listener = this.listener;
+    long start = listener != null ? System.nanoTime() : 0;
+    Filter filter = searcher.isCompactSchema() ? HouseNumberFilter.forAddress(address, true) : null;
+    Query query = analysis.queryBuilder.build(address, match, filter != null, stage, cascade);
+    if (listener != null) {
+      listener.phaseCompleted(PostcodeCheckListener.Phase.QUERY_BUILD, System.nanoTime() - start);
+    }
 
-      try {
-        if (address.getHouseNumber() != null) {
-          int houseNumber = Integer.parseInt(address.getHouseNumber());
-
-          BooleanQuery oddEvenQuery = new BooleanQuery();
-          oddEvenQuery.add(new LowerCaseTermQuery(new Term("numbertype", "mixed")), BooleanClause.Occur.SHOULD);
-          if (houseNumber % 2 == 0) {
-            oddEvenQuery.add(new LowerCaseTermQuery(new Term("numbertype", "even")), BooleanClause.Occur.SHOULD);
-          } else {
-            oddEvenQuery.add(new LowerCaseTermQuery(new Term("numbertype", "odd")), BooleanClause.Occur.SHOULD);
-
-          }
-          booleanQuery.add(oddEvenQuery, BooleanClause.Occur.MUST);
-          booleanQuery.add(NumericRangeQuery.newIntRange("minnumber", 0, houseNumber, true, true), BooleanClause.Occur.SHOULD);
-          booleanQuery.add(NumericRangeQuery.newIntRange("maxnumber", houseNumber, 9999, true, true), BooleanClause.Occur.SHOULD);
+    // both compact searches mostly hit the same documents, so each collects into its own list and only the list of
+    // the search that wins is handed back, keeping the candidates unique and in score order
+    List<ScoredAddress> collected = filter != null && candidates != null ? new ArrayList<ScoredAddress>() : candidates;
+    Address result = searchAddress(SEARCH_LIMIT, query, filter, searcher, debug, address, listener, collected);
+    if (filter != null) {
+      // the range filter drops the right street when the number is outside its range, leaving only other streets or
+      // cities that hold the number; unless the hit matches the input, also search with only the odd/even check, like
+      // the full schema, and keep the closer of the two
+      CandidateRanker ranker = new CandidateRanker(address);
+      if (result == null || ranker.distance(result, 0) != 0) {
+        List<ScoredAddress> parityCollected = candidates != null ? new ArrayList<ScoredAddress>() : null;
+        Address parityResult = searchAddress(SEARCH_LIMIT, query, HouseNumberFilter.forAddress(address, false),
+            searcher, debug, address, listener, parityCollected);
+        if (result == null || (parityResult != null
+            && ranker.distance(parityResult, Integer.MAX_VALUE - 1) < ranker.distance(result, Integer.MAX_VALUE - 1))) {
+          result = parityResult;
+          collected = parityCollected;
         }
-      } catch (NumberFormatException e) {
-        // nothing to see, walk through...
       }
-
-      if (StringUtils.isNotBlank(address.getDescription())) {
-        QueryParser qp = new QueryParser("complete", new DutchAnalyzer());
-        booleanQuery.add(qp.parse(QueryParser.escape(address.getDescription())), BooleanClause.Occur.SHOULD);
+      if (candidates != null) {
+        candidates.addAll(collected);
       }
-
-      result = searchAddress(limit, booleanQuery, null, reader, debug, address);
     }
     if (result != null) {
-      addHouseNumber(address, result);
+      result.setMatchSource(stage);
     }
     return result;
   }
@@ -165,6 +509,9 @@ public class PostcodeCheck {
     result.setHouseNumber(address.getHouseNumber());
     result.setHouseNumberAffix(address.getHouseNumberAffix());
     result.setDescription(address.getDescription());
+  }
+
+  static void completeHouseNumber(Address result) {
     if (StringUtils.isEmpty(result.getHouseNumber())) {
       result.fillHouseNumberFromDescription();
       // if we don't know the houseNumber we cannot know the postcode
@@ -181,12 +528,20 @@ public class PostcodeCheck {
   }
 
   private Address searchAddress(final int limit, final Query query,
-                                BooleanFilter filterClauses, final IndexReader reader, boolean debug, Address originalAddress) throws IOException {
-    Address result = null;
+                                Filter filter, final AddressSearcher searcher, boolean debug, Address originalAddress,
+                                PostcodeCheckListener listener, List<ScoredAddress> collected) throws IOException {
+    CandidateRanker ranker = new CandidateRanker(originalAddress);
+    AddressTable addressTable = searcher.getAddressTable();
     Float lastScore = null;
+    int candidates = 0;
+    long storedFieldsNanos = 0;
+    long rerankNanos = 0;
 
-    IndexSearcher searcher = new IndexSearcher(reader);
-    TopDocs docs = searcher.search(query, filterClauses, limit);
+    long start = listener != null ? System.nanoTime() : 0;
+    TopDocs docs = searcher.search(query, filter, limit);
+    if (listener != null) {
+      listener.phaseCompleted(PostcodeCheckListener.Phase.SEARCH, System.nanoTime() - start);
+    }
     if (debug) {
       printDebug(query, searcher, docs);
     }
@@ -196,18 +551,35 @@ public class PostcodeCheck {
       } else if ((lastScore / 2) > scoreDoc.score) {
         break;
       }
-      Address nextAddress = new Address(reader.document(scoreDoc.doc));
-
+      candidates++;
+      long loadStart = listener != null ? System.nanoTime() : 0;
+      Address nextAddress;
+      if (addressTable != null) {
+        nextAddress = addressTable.address(scoreDoc.doc);
+      } else {
+        Document document = searcher.doc(scoreDoc.doc, CandidateRanker.FIELDS);
+        nextAddress = Address.fromIndex(document.get("postcode"), document.get("city"),
+            document.get("municipality"), document.get("street"));
+      }
+      long rankStart = listener != null ? System.nanoTime() : 0;
+      storedFieldsNanos += rankStart - loadStart;
 
-      if (result == null) {
-        result = nextAddress;
-        continue;
+      ranker.offer(nextAddress);
+      if (listener != null) {
+        rerankNanos += System.nanoTime() - rankStart;
       }
-      if (nextAddress.getLevenshteinDistance(originalAddress) < result.getLevenshteinDistance(originalAddress)) {
-        result = nextAddress;
+      if (collected != null) {
+        collected.add(new ScoredAddress(nextAddress, scoreDoc.score));
+      } else if (ranker.isExact()) {
+        break;
       }
     }
-    return result;
+    if (listener != null) {
+      listener.phaseCompleted(PostcodeCheckListener.Phase.STORED_FIELDS, storedFieldsNanos);
+      listener.phaseCompleted(PostcodeCheckListener.Phase.RERANK, rerankNanos);
+      listener.searchCompleted(docs.totalHits, candidates);
+    }
+    return ranker.getBest();
   }
 
   private void printDebug(Query query, IndexSearcher searcher, TopDocs docs) throws IOException {
@@ -219,4 +591,25 @@ public class PostcodeCheck {
       System.out.println(searcher.explain(query, scoreDoc.doc));
     }
   }
+
+  /**
+   * The synonym rules of one index build, and the analyzers that normalize its terms and those of the queries on it.
+   */
+  private static class Analysis {
+    private final AddressSynonyms synonyms;
+    private final PerFieldAnalyzerWrapper analyzer;
+    private final AddressQueryBuilder queryBuilder;
+
+    private Analysis(AddressSynonyms synonyms) {
+      this.synonyms = synonyms;
+      HashMap<String, Analyzer> analyzers = new HashMap<>();
+      analyzers.put("complete", new DutchAnalyzer());
+      analyzers.put("streetAnalyzed", new DutchAnalyzer());
+      analyzers.put("street", new SynonymKeywordAnalyzer(synonyms, true));
+      analyzers.put("city", new SynonymKeywordAnalyzer(synonyms, false));
+      analyzers.put("municipality", new SynonymKeywordAnalyzer(synonyms, false));
+      this.analyzer = new PerFieldAnalyzerWrapper(new SimpleLowerCaseKeywordAnalyzer(), analyzers);
+      this.queryBuilder = new AddressQueryBuilder(analyzer);
+    }
+  }
 }
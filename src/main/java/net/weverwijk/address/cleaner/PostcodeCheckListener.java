@@ -0,0 +1,36 @@
+package net.weverwijk.address.cleaner;
+
+/**
+ * Receives timings and counters from {@link PostcodeCheck}. Without a listener nothing is measured, so there is no
+ * cost to lookups. Implementations are called from the lookup threads and must be thread-safe and fast;
+ * {@link PostcodeCheckMetrics} is one that publishes everything over JMX.
+ */
+public interface PostcodeCheckListener {
+
+  enum Phase {
+    /** building the Lucene query from the input address */
+    QUERY_BUILD,
+    /** running the query for the top candidates */
+    SEARCH,
+    /** loading the stored fields of the candidates */
+    STORED_FIELDS,
+    /** comparing candidates with the input by edit distance */
+    RERANK
+  }
+
+  void phaseCompleted(Phase phase, long nanos);
+
+  /**
+   * Called after every index search with the number of hits and the number of candidates that scored within half of
+   * the best score and were re-ranked.
+   */
+  void searchCompleted(int totalHits, int candidates);
+
+  void indexLoaded(int documents, long sizeInBytes, long loadNanos);
+
+  /**
+   * Called after every lookup that was not answered from the cache, with the path that answered it, or null when no
+   * address was found.
+   */
+  void lookupCompleted(MatchSource source);
+}
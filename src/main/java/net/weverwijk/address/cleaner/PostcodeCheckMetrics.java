@@ -0,0 +1,134 @@
+package net.weverwijk.address.cleaner;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Listener that keeps latency histograms and counters, published as an MXBean with {@link #register(String)}.
+ */
+public class PostcodeCheckMetrics implements PostcodeCheckListener, PostcodeCheckMetricsMXBean {
+  private static final int MAX_CANDIDATE_COUNT = 20;
+
+  private final LatencyHistogram[] phases = new LatencyHistogram[Phase.values().length];
+  private final AtomicLong searches = new AtomicLong();
+  private final AtomicLong searchesWithoutHits = new AtomicLong();
+  private final AtomicLongArray candidateCounts = new AtomicLongArray(MAX_CANDIDATE_COUNT + 1);
+  // one per match source, the last one for lookups without a result
+  private final AtomicLongArray lookups = new AtomicLongArray(MatchSource.values().length + 1);
+  private volatile int indexDocuments;
+  private volatile long indexSizeBytes;
+  private volatile long indexLoadNanos;
+
+  public PostcodeCheckMetrics() {
+    for (int i = 0; i < phases.length; i++) {
+      phases[i] = new LatencyHistogram();
+    }
+  }
+
+  /**
+   * Registers these metrics with the platform MBean server as
+   * {@code net.weverwijk.address.cleaner:type=PostcodeCheck,name=<name>}.
+   */
+  public ObjectName register(String name) throws JMException {
+    ObjectName objectName = new ObjectName("net.weverwijk.address.cleaner:type=PostcodeCheck,name=" + ObjectName.quote(name));
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    server.registerMBean(this, objectName);
+    return objectName;
+  }
+
+  @Override
+  public void phaseCompleted(Phase phase, long nanos) {
+    phases[phase.ordinal()].record(nanos);
+  }
+
+  @Override
+  public void searchCompleted(int totalHits, int candidates) {
+    searches.incrementAndGet();
+    if (totalHits == 0) {
+      searchesWithoutHits.incrementAndGet();
+    }
+    candidateCounts.incrementAndGet(Math.min(candidates, MAX_CANDIDATE_COUNT));
+  }
+
+  @Override
+  public void indexLoaded(int documents, long sizeInBytes, long loadNanos) {
+    indexDocuments = documents;
+    indexSizeBytes = sizeInBytes;
+    indexLoadNanos = loadNanos;
+  }
+
+  @Override
+  public void lookupCompleted(MatchSource source) {
+    lookups.incrementAndGet(source != null ? source.ordinal() : lookups.length() - 1);
+  }
+
+  @Override
+  public LatencySnapshot getQueryBuildLatency() {
+    return LatencySnapshot.of(phases[Phase.QUERY_BUILD.ordinal()]);
+  }
+
+  @Override
+  public LatencySnapshot getSearchLatency() {
+    return LatencySnapshot.of(phases[Phase.SEARCH.ordinal()]);
+  }
+
+  @Override
+  public LatencySnapshot getStoredFieldsLatency() {
+    return LatencySnapshot.of(phases[Phase.STORED_FIELDS.ordinal()]);
+  }
+
+  @Override
+  public LatencySnapshot getRerankLatency() {
+    return LatencySnapshot.of(phases[Phase.RERANK.ordinal()]);
+  }
+
+  @Override
+  public long getSearches() {
+    return searches.get();
+  }
+
+  @Override
+  public long getSearchesWithoutHits() {
+    return searchesWithoutHits.get();
+  }
+
+  @Override
+  public long[] getCandidateCounts() {
+    long[] result = new long[candidateCounts.length()];
+    for (int i = 0; i < result.length; i++) {
+      result[i] = candidateCounts.get(i);
+    }
+    return result;
+  }
+
+  @Override
+  public Map<String, Long> getLookupsBySource() {
+    Map<String, Long> result = new LinkedHashMap<>();
+    for (MatchSource source : MatchSource.values()) {
+      result.put(source.name(), lookups.get(source.ordinal()));
+    }
+    result.put("NOT_FOUND", lookups.get(lookups.length() - 1));
+    return result;
+  }
+
+  @Override
+  public int getIndexDocuments() {
+    return indexDocuments;
+  }
+
+  @Override
+  public long getIndexSizeBytes() {
+    return indexSizeBytes;
+  }
+
+  @Override
+  public long getIndexLoadMillis() {
+    return indexLoadNanos / 1000000;
+  }
+}
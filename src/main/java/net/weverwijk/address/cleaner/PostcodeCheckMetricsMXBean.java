@@ -0,0 +1,35 @@
+package net.weverwijk.address.cleaner;
+
+import java.util.Map;
+
+public interface PostcodeCheckMetricsMXBean {
+
+  LatencySnapshot getQueryBuildLatency();
+
+  LatencySnapshot getSearchLatency();
+
+  LatencySnapshot getStoredFieldsLatency();
+
+  LatencySnapshot getRerankLatency();
+
+  long getSearches();
+
+  long getSearchesWithoutHits();
+
+  /**
+   * Number of searches by the number of candidates that survived the score cutoff; the last element counts that
+   * number and more.
+   */
+  long[] getCandidateCounts();
+
+  /**
+   * Number of lookups by the {@link MatchSource} that answered them, plus NOT_FOUND.
+   */
+  Map<String, Long> getLookupsBySource();
+
+  int getIndexDocuments();
+
+  long getIndexSizeBytes();
+
+  long getIndexLoadMillis();
+}
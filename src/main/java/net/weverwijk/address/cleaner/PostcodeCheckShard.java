@@ -0,0 +1,28 @@
+package net.weverwijk.address.cleaner;
+
+import org.apache.lucene.queryparser.classic.ParseException;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Serves a {@link PostcodeCheck} as an {@link AddressShard}, in the same JVM or exported by
+ * {@link AddressShardServer}, so the check itself does not have to be a remote type.
+ */
+public class PostcodeCheckShard implements AddressShard {
+  private final PostcodeCheck postcodeCheck;
+
+  public PostcodeCheckShard(PostcodeCheck postcodeCheck) {
+    this.postcodeCheck = postcodeCheck;
+  }
+
+  @Override
+  public Address getAddress(Address address) throws IOException, ParseException {
+    return postcodeCheck.getAddress(address);
+  }
+
+  @Override
+  public List<ScoredAddress> searchCandidates(Address address) throws IOException {
+    return postcodeCheck.searchCandidates(address);
+  }
+}
@@ -0,0 +1,212 @@
+package net.weverwijk.address.cleaner;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.MultiDocValues;
+import org.apache.lucene.index.MultiFields;
+import org.apache.lucene.index.NumericDocValues;
+import org.apache.lucene.util.Bits;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Compact in-memory copy of the postcode rows, sorted on the packed postcode. Answers lookups for inputs with a
+ * valid postcode and house number without going through a Lucene query.
+ */
+class PostcodeTable {
+  static final byte MIXED = 0;
+  static final byte ODD = 1;
+  static final byte EVEN = 2;
+  private static final Set<String> FIELDS = new HashSet<>(Arrays.asList(
+      "postcode", "street", "city", "municipality", "numbertype", "minnumber", "maxnumber"));
+  private static final Set<String> NUMBER_FIELDS = new HashSet<>(Arrays.asList(
+      "numbertype", "minnumber", "maxnumber"));
+  private static final Set<String> COMPACT_FIELDS = new HashSet<>(Arrays.asList(
+      "postcode", "street", "city", "municipality"));
+
+  private final int[] postcodes;
+  private final int[] minNumbers;
+  private final int[] maxNumbers;
+  private final byte[] numberTypes;
+  private final String[] streets;
+  private final String[] cities;
+  private final String[] municipalities;
+
+  private PostcodeTable(int size) {
+    postcodes = new int[size];
+    minNumbers = new int[size];
+    maxNumbers = new int[size];
+    numberTypes = new byte[size];
+    streets = new String[size];
+    cities = new String[size];
+    municipalities = new String[size];
+  }
+
+  /**
+   * Reads the number ranges and types from doc values when compact is set, otherwise from the stored fields. The
+   * postcode and names come from the address table when there is one.
+   */
+  static PostcodeTable build(IndexReader reader, boolean compact, AddressTable addressTable) throws IOException {
+    PostcodeTable unsorted = new PostcodeTable(reader.numDocs());
+    HashMap<String, String> names = new HashMap<>();
+    Bits liveDocs = MultiFields.getLiveDocs(reader);
+    NumericDocValues numberTypes = compact ? MultiDocValues.getNumericValues(reader, "numbertype") : null;
+    NumericDocValues minNumbers = compact ? MultiDocValues.getNumericValues(reader, "minnumber") : null;
+    NumericDocValues maxNumbers = compact ? MultiDocValues.getNumericValues(reader, "maxnumber") : null;
+    Set<String> fields;
+    if (addressTable == null) {
+      fields = compact ? COMPACT_FIELDS : FIELDS;
+    } else {
+      fields = compact ? null : NUMBER_FIELDS;
+    }
+    int rows = 0;
+    for (int doc = 0; doc < reader.maxDoc(); doc++) {
+      if (liveDocs != null && !liveDocs.get(doc)) {
+        continue;
+      }
+      Document document = fields == null ? null : reader.document(doc, fields);
+      int postcode = addressTable != null ? addressTable.postcode(doc) : Postcodes.pack(document.get("postcode"));
+      if (postcode == Postcodes.INVALID) {
+        continue;
+      }
+      unsorted.postcodes[rows] = postcode;
+      if (compact) {
+        unsorted.minNumbers[rows] = (int) minNumbers.get(doc);
+        unsorted.maxNumbers[rows] = (int) maxNumbers.get(doc);
+        unsorted.numberTypes[rows] = (byte) numberTypes.get(doc);
+      } else {
+        unsorted.minNumbers[rows] = document.getField("minnumber").numericValue().intValue();
+        unsorted.maxNumbers[rows] = document.getField("maxnumber").numericValue().intValue();
+        unsorted.numberTypes[rows] = numberType(document.get("numbertype"));
+      }
+      if (addressTable != null) {
+        // already deduplicated
+        unsorted.streets[rows] = addressTable.street(doc);
+        unsorted.cities[rows] = addressTable.city(doc);
+        unsorted.municipalities[rows] = addressTable.municipality(doc);
+      } else {
+        unsorted.streets[rows] = dedup(names, document.get("street"));
+        unsorted.cities[rows] = dedup(names, document.get("city"));
+        unsorted.municipalities[rows] = dedup(names, document.get("municipality"));
+      }
+      rows++;
+    }
+
+    // sort on postcode, keeping the original row as tie breaker in the low bits
+    long[] order = new long[rows];
+    for (int row = 0; row < rows; row++) {
+      order[row] = ((long) unsorted.postcodes[row] << 32) | row;
+    }
+    Arrays.sort(order);
+    PostcodeTable table = new PostcodeTable(rows);
+    for (int i = 0; i < rows; i++) {
+      int row = (int) order[i];
+      table.postcodes[i] = unsorted.postcodes[row];
+      table.minNumbers[i] = unsorted.minNumbers[row];
+      table.maxNumbers[i] = unsorted.maxNumbers[row];
+      table.numberTypes[i] = unsorted.numberTypes[row];
+      table.streets[i] = unsorted.streets[row];
+      table.cities[i] = unsorted.cities[row];
+      table.municipalities[i] = unsorted.municipalities[row];
+    }
+    return table;
+  }
+
+  int size() {
+    return postcodes.length;
+  }
+
+  /**
+   * Returns the address for a clean input: a valid postcode and numeric house number that fall in exactly one row,
+   * and a street and city, when given, that agree with that row. Returns null for everything else.
+   */
+  Address find(Address address) {
+    int postcode = Postcodes.pack(address.getPostcode());
+    int houseNumber = parseHouseNumber(address.getHouseNumber());
+    if (postcode == Postcodes.INVALID || houseNumber < 0) {
+      return null;
+    }
+    int match = -1;
+    for (int row = firstRow(postcode); row >= 0 && row < postcodes.length && postcodes[row] == postcode; row++) {
+      if (contains(row, houseNumber)) {
+        if (match >= 0) {
+          return null;
+        }
+        match = row;
+      }
+    }
+    if (match < 0) {
+      return null;
+    }
+    if (address.getStreet() != null && !address.getStreet().equalsIgnoreCase(streets[match])) {
+      return null;
+    }
+    if (address.getCity() != null && !address.getCity().equalsIgnoreCase(cities[match])
+        && !address.getCity().equalsIgnoreCase(municipalities[match])) {
+      return null;
+    }
+    return Address.fromIndex(Postcodes.unpack(postcode), cities[match], municipalities[match], streets[match]);
+  }
+
+  private boolean contains(int row, int houseNumber) {
+    return houseNumber >= minNumbers[row] && houseNumber <= maxNumbers[row]
+        && matchesNumberType(numberTypes[row], houseNumber);
+  }
+
+  static boolean matchesNumberType(byte numberType, int houseNumber) {
+    switch (numberType) {
+      case ODD:
+        return houseNumber % 2 == 1;
+      case EVEN:
+        return houseNumber % 2 == 0;
+      default:
+        return true;
+    }
+  }
+
+  private int firstRow(int postcode) {
+    int row = Arrays.binarySearch(postcodes, postcode);
+    while (row > 0 && postcodes[row - 1] == postcode) {
+      row--;
+    }
+    return row;
+  }
+
+  private static int parseHouseNumber(String houseNumber) {
+    if (houseNumber == null || houseNumber.isEmpty() || houseNumber.length() > 6) {
+      return -1;
+    }
+    int result = 0;
+    for (int i = 0; i < houseNumber.length(); i++) {
+      char c = houseNumber.charAt(i);
+      if (c < '0' || c > '9') {
+        return -1;
+      }
+      result = result * 10 + (c - '0');
+    }
+    return result;
+  }
+
+  static byte numberType(String numberType) {
+    if ("odd".equalsIgnoreCase(numberType)) {
+      return ODD;
+    }
+    if ("even".equalsIgnoreCase(numberType)) {
+      return EVEN;
+    }
+    return MIXED;
+  }
+
+  private static String dedup(HashMap<String, String> names, String name) {
+    String existing = names.get(name);
+    if (existing == null) {
+      names.put(name, name);
+      return name;
+    }
+    return existing;
+  }
+}
@@ -0,0 +1,60 @@
+package net.weverwijk.address.cleaner;
+
+/**
+ * Packs Dutch postcodes ("1234AB", spaces and case ignored) into a single int, so they can be used as primitive keys.
+ */
+public final class Postcodes {
+  public static final int INVALID = -1;
+
+  private Postcodes() {
+  }
+
+  public static int pack(CharSequence postcode) {
+    if (postcode == null) {
+      return INVALID;
+    }
+    int digits = 0;
+    int letters = 0;
+    int digitCount = 0;
+    int letterCount = 0;
+    for (int i = 0; i < postcode.length(); i++) {
+      char c = postcode.charAt(i);
+      if (c == ' ') {
+        continue;
+      }
+      if (c >= '0' && c <= '9' && letterCount == 0 && digitCount < 4) {
+        digits = digits * 10 + (c - '0');
+        digitCount++;
+      } else if (digitCount == 4 && letterCount < 2 && Character.isLetter(c)) {
+        int letter = Character.toUpperCase(c) - 'A';
+        if (letter < 0 || letter >= 26) {
+          return INVALID;
+        }
+        letters = letters * 26 + letter;
+        letterCount++;
+      } else {
+        return INVALID;
+      }
+    }
+    if (digitCount != 4 || letterCount != 2 || digits < 1000) {
+      return INVALID;
+    }
+    return digits * 676 + letters;
+  }
+
+  /**
+   * The four digits of a packed postcode.
+   */
+  public static int digits(int packed) {
+    return packed / 676;
+  }
+
+  public static String unpack(int packed) {
+    int letters = packed % 676;
+    return new StringBuilder(6)
+        .append(digits(packed))
+        .append((char) ('A' + letters / 26))
+        .append((char) ('A' + letters % 26))
+        .toString();
+  }
+}
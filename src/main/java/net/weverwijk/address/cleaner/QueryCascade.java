@@ -0,0 +1,33 @@
+package net.weverwijk.address.cleaner;
+
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * Runs the index search in stages of increasing cost instead of one query with all clauses: exact terms first,
+ * then the analyzed street and description, and fuzzy terms last. A stage only runs when the one before it was not
+ * confident; the {@link MatchSource} of a result tells which stage answered it. Set it with
+ * {@link PostcodeCheck#setQueryCascade(QueryCascade)}.
+ */
+@Data
+public class QueryCascade {
+  /** edits allowed by the fuzzy terms of the last stage, at most 2 */
+  private int maxEdits = 2;
+  /** leading characters the fuzzy terms must match exactly; longer prefixes walk fewer terms */
+  private int prefixLength = 0;
+  /** minimal relative gap between the two best scores for a stage to be confident of its top candidate */
+  private float minScoreGap = 0.25F;
+
+  /**
+   * A stage is confident when its best candidate equals the input, when only one candidate scored within half of
+   * the top score, or when the top score leads the next one by at least the minimal gap.
+   */
+  boolean isConfident(List<ScoredAddress> candidates, boolean exactMatch) {
+    if (exactMatch || candidates.size() == 1) {
+      return true;
+    }
+    float top = candidates.get(0).getScore();
+    return top > 0 && (top - candidates.get(1).getScore()) / top >= minScoreGap;
+  }
+}
@@ -0,0 +1,27 @@
+package net.weverwijk.address.cleaner;
+
+import java.io.Serializable;
+
+/**
+ * An index candidate with the score of the search that found it, as returned by
+ * {@link AddressShard#searchCandidates(Address)}.
+ */
+public class ScoredAddress implements Serializable {
+  private static final long serialVersionUID = 1L;
+
+  private final Address address;
+  private final float score;
+
+  public ScoredAddress(Address address, float score) {
+    this.address = address;
+    this.score = score;
+  }
+
+  public Address getAddress() {
+    return address;
+  }
+
+  public float getScore() {
+    return score;
+  }
+}
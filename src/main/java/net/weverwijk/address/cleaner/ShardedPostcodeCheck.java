@@ -0,0 +1,194 @@
+package net.weverwijk.address.cleaner;
+
+import au.com.bytecode.opencsv.CSVReader;
+import au.com.bytecode.opencsv.CSVWriter;
+import org.apache.lucene.queryparser.classic.ParseException;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Looks up addresses in an index split into shards by postcode region, the first two digits of the postcode.
+ * Inputs with a valid postcode go to the one shard of their region. Other inputs are searched on all shards in
+ * parallel; each shard cuts off its candidates on its own scores, and the candidates of all shards are re-ranked here,
+ * as {@link PostcodeCheck} does for one index.
+ * <p>
+ * The shards are {@link PostcodeCheckShard}s in the same JVM, see {@link #load(String, int, File)}, or in other
+ * processes, see {@link AddressShardServer}.
+ */
+public class ShardedPostcodeCheck implements Closeable {
+  private static final Comparator<ScoredAddress> BY_SCORE = new Comparator<ScoredAddress>() {
+    @Override
+    public int compare(ScoredAddress a, ScoredAddress b) {
+      return Float.compare(b.getScore(), a.getScore());
+    }
+  };
+
+  private final List<AddressShard> shards;
+  private final List<PostcodeCheck> owned;
+  private final ExecutorService executor;
+
+  /**
+   * The shards must be in the order of {@link #shardOf(String, int)}.
+   */
+  public ShardedPostcodeCheck(List<? extends AddressShard> shards) {
+    this(shards, Collections.<PostcodeCheck>emptyList());
+  }
+
+  private ShardedPostcodeCheck(List<? extends AddressShard> shards, List<PostcodeCheck> owned) {
+    if (shards.isEmpty()) {
+      throw new IllegalArgumentException("no shards");
+    }
+    this.shards = new ArrayList<>(shards);
+    this.owned = owned;
+    this.executor = Executors.newFixedThreadPool(shards.size(), new BatchCleaner.WorkerThreadFactory("address-shard-"));
+  }
+
+  /**
+   * Splits the postcode csv into shards and loads each into its own in-memory {@link PostcodeCheck}, which
+   * {@link #close()} closes again.
+   */
+  public static ShardedPostcodeCheck load(String fileName, int shardCount, File directory) throws IOException {
+    List<PostcodeCheck> postcodeChecks = new ArrayList<>(shardCount);
+    List<AddressShard> shards = new ArrayList<>(shardCount);
+    try {
+      for (File shardFile : splitCsv(fileName, shardCount, directory)) {
+        PostcodeCheck postcodeCheck = new PostcodeCheck();
+        postcodeChecks.add(postcodeCheck);
+        postcodeCheck.loadAddresses(shardFile.getPath());
+        shards.add(new PostcodeCheckShard(postcodeCheck));
+      }
+    } catch (IOException | RuntimeException e) {
+      for (PostcodeCheck postcodeCheck : postcodeChecks) {
+        postcodeCheck.close();
+      }
+      throw e;
+    }
+    return new ShardedPostcodeCheck(shards, postcodeChecks);
+  }
+
+  /**
+   * Writes one postcode csv per shard into the directory, named shard-0.csv and so on. Rows without a valid
+   * postcode go to the first shard.
+   */
+  public static List<File> splitCsv(String fileName, int shardCount, File directory) throws IOException {
+    List<File> files = new ArrayList<>(shardCount);
+    List<CSVWriter> writers = new ArrayList<>(shardCount);
+    try (CSVReader csvReader = new CSVReader(new FileReader(fileName), ';', '\"')) {
+      String[] header = csvReader.readNext();
+      int postcode = header == null ? -1 : Arrays.asList(header).indexOf("postcode");
+      if (postcode < 0) {
+        throw new IllegalArgumentException("missing column postcode");
+      }
+      for (int i = 0; i < shardCount; i++) {
+        File file = new File(directory, "shard-" + i + ".csv");
+        files.add(file);
+        writers.add(new CSVWriter(new FileWriter(file), ';', '\"'));
+        writers.get(i).writeNext(header);
+      }
+      String[] nextLine;
+      while ((nextLine = csvReader.readNext()) != null) {
+        writers.get(Math.max(shardOf(nextLine[postcode], shardCount), 0)).writeNext(nextLine);
+      }
+    } finally {
+      for (CSVWriter writer : writers) {
+        writer.close();
+      }
+    }
+    return files;
+  }
+
+  /**
+   * The shard of a postcode: the regions 10 to 99 spread evenly over the shards, or -1 for an invalid postcode.
+   */
+  public static int shardOf(String postcode, int shardCount) {
+    int packed = Postcodes.pack(postcode);
+    if (packed == Postcodes.INVALID) {
+      return -1;
+    }
+    int region = Postcodes.digits(packed) / 100;
+    return (region - 10) * shardCount / 90;
+  }
+
+  public Address getAddress(Address address) throws IOException, ParseException {
+    int shard = shardOf(address.getPostcode(), shards.size());
+    if (shard >= 0) {
+      return shards.get(shard).getAddress(address);
+    }
+
+    List<Future<List<ScoredAddress>>> searches = new ArrayList<>(shards.size());
+    List<ScoredAddress> candidates = new ArrayList<>();
+    try {
+      for (AddressShard each : shards) {
+        searches.add(executor.submit(new SearchCandidates(each, address)));
+      }
+      for (Future<List<ScoredAddress>> search : searches) {
+        // scores of different indexes do not compare, their statistics differ; relative to the best of its shard
+        // they only decide the order, so equally close candidates are taken from the best match of a shard first
+        List<ScoredAddress> shardCandidates = BatchCleaner.get(search);
+        float topScore = shardCandidates.isEmpty() ? 0 : shardCandidates.get(0).getScore();
+        for (ScoredAddress candidate : shardCandidates) {
+          candidates.add(new ScoredAddress(candidate.getAddress(), candidate.getScore() / topScore));
+        }
+      }
+    } finally {
+      for (Future<List<ScoredAddress>> search : searches) {
+        search.cancel(true);
+      }
+    }
+    if (candidates.isEmpty()) {
+      return null;
+    }
+
+    // each shard already cut off its candidates on its own scores, re-rank all of them as within one index
+    Collections.sort(candidates, BY_SCORE);
+    CandidateRanker ranker = new CandidateRanker(address);
+    for (ScoredAddress candidate : candidates) {
+      if (ranker.isExact()) {
+        break;
+      }
+      ranker.offer(candidate.getAddress());
+    }
+    Address result = ranker.getBest();
+    PostcodeCheck.completeHouseNumber(result);
+    return result;
+  }
+
+  /**
+   * Stops the searches, and closes the shards loaded by {@link #load(String, int, File)}.
+   */
+  @Override
+  public void close() throws IOException {
+    executor.shutdownNow();
+    for (PostcodeCheck postcodeCheck : owned) {
+      postcodeCheck.close();
+    }
+  }
+
+  private static class SearchCandidates implements Callable<List<ScoredAddress>> {
+    private final AddressShard shard;
+    private final Address address;
+
+    private SearchCandidates(AddressShard shard, Address address) {
+      this.shard = shard;
+      this.address = address;
+    }
+
+    @Override
+    public List<ScoredAddress> call() throws IOException {
+      return shard.searchCandidates(address);
+    }
+  }
+}
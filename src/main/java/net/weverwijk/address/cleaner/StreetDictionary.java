@@ -0,0 +1,369 @@
+package net.weverwijk.address.cleaner;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.MultiFields;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.IntroSorter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Dictionary of all street and city names in the index, as a trie over words, so multi word names such as
+ * "van baerlestraat" are found in one pass over a description. Words of five or more characters may have one typo;
+ * those are resolved through an index of all single character deletions of the known words.
+ */
+class StreetDictionary {
+  private static final int MIN_FUZZY_LENGTH = 5;
+  private static final int ROOT = 0;
+
+  private final HashMap<String, Integer> wordIds = new HashMap<>();
+  private final List<String> words = new ArrayList<>();
+  private final LongIntMap edges = new LongIntMap();
+  private final List<String> nodeStreets = new ArrayList<>();
+  private final List<String> nodeCities = new ArrayList<>();
+  private long[] deletionKeys;
+  private int[] deletionWords;
+
+  private StreetDictionary() {
+    nodeStreets.add(null);
+    nodeCities.add(null);
+  }
+
+  static StreetDictionary build(IndexReader reader) throws IOException {
+    StreetDictionary dictionary = new StreetDictionary();
+    dictionary.addTerms(reader, "street", dictionary.nodeStreets);
+    dictionary.addTerms(reader, "city", dictionary.nodeCities);
+    dictionary.indexDeletions();
+    return dictionary;
+  }
+
+  private void addTerms(IndexReader reader, String field, List<String> names) throws IOException {
+    Terms terms = MultiFields.getTerms(reader, field);
+    if (terms == null) {
+      return;
+    }
+    TermsEnum termsEnum = terms.iterator(null);
+    BytesRef term;
+    while ((term = termsEnum.next()) != null) {
+      String name = term.utf8ToString();
+      int node = ROOT;
+      for (String word : split(name)) {
+        Integer wordId = wordIds.get(word);
+        if (wordId == null) {
+          wordId = words.size();
+          wordIds.put(word, wordId);
+          words.add(word);
+        }
+        int child = edges.get(edge(node, wordId));
+        if (child < 0) {
+          child = nodeStreets.size();
+          nodeStreets.add(null);
+          nodeCities.add(null);
+          edges.put(edge(node, wordId), child);
+        }
+        node = child;
+      }
+      if (node != ROOT) {
+        names.set(node, name);
+      }
+    }
+  }
+
+  private void indexDeletions() {
+    int count = 0;
+    for (String word : words) {
+      if (word.length() >= MIN_FUZZY_LENGTH - 1) {
+        count += word.length() + 1;
+      }
+    }
+    final long[] entries = new long[count];
+    final int[] entryWords = new int[count];
+    int entry = 0;
+    for (int wordId = 0; wordId < words.size(); wordId++) {
+      String word = words.get(wordId);
+      if (word.length() >= MIN_FUZZY_LENGTH - 1) {
+        for (int skip = -1; skip < word.length(); skip++) {
+          entries[entry] = hash(word, skip);
+          entryWords[entry++] = wordId;
+        }
+      }
+    }
+    // sort on key, carrying the word ids along
+    new IntroSorter() {
+      private long pivot;
+
+      @Override
+      protected int compare(int i, int j) {
+        return Long.compare(entries[i], entries[j]);
+      }
+
+      @Override
+      protected void setPivot(int i) {
+        pivot = entries[i];
+      }
+
+      @Override
+      protected int comparePivot(int j) {
+        return Long.compare(pivot, entries[j]);
+      }
+
+      @Override
+      protected void swap(int i, int j) {
+        long key = entries[i];
+        entries[i] = entries[j];
+        entries[j] = key;
+        int word = entryWords[i];
+        entryWords[i] = entryWords[j];
+        entryWords[j] = word;
+      }
+    }.sort(0, count);
+    deletionKeys = entries;
+    deletionWords = entryWords;
+  }
+
+  DescriptionMatch find(String description) {
+    List<String> tokens = split(description);
+    int[] ids = new int[tokens.size()];
+    for (int i = 0; i < ids.length; i++) {
+      ids[i] = wordId(tokens.get(i));
+    }
+
+    int streetStart = -1;
+    int streetEnd = -1;
+    String street = null;
+    boolean streetHasNumber = false;
+    for (int start = 0; start < ids.length; start++) {
+      int node = ROOT;
+      for (int end = start; end < ids.length && ids[end] >= 0; end++) {
+        node = edges.get(edge(node, ids[end]));
+        if (node < 0) {
+          break;
+        }
+        String name = nodeStreets.get(node);
+        if (name != null) {
+          boolean hasNumber = end + 1 < tokens.size() && firstDigit(tokens.get(end + 1)) >= 0;
+          // a street followed by a house number wins, then the one with the most words
+          if (street == null || (hasNumber && !streetHasNumber)
+              || (hasNumber == streetHasNumber && end + 1 - start > streetEnd - streetStart)) {
+            street = name;
+            streetStart = start;
+            streetEnd = end + 1;
+            streetHasNumber = hasNumber;
+          }
+        }
+      }
+    }
+
+    String city = null;
+    int cityLength = 0;
+    for (int start = 0; start < ids.length; start++) {
+      int node = ROOT;
+      for (int end = start; end < ids.length && ids[end] >= 0; end++) {
+        if (end >= streetStart && start < streetEnd) {
+          break;
+        }
+        node = edges.get(edge(node, ids[end]));
+        if (node < 0) {
+          break;
+        }
+        String name = nodeCities.get(node);
+        // the longest, and of equal length the last one, as the city usually comes after the street
+        if (name != null && end + 1 - start >= cityLength) {
+          city = name;
+          cityLength = end + 1 - start;
+        }
+      }
+    }
+
+    if (street == null && city == null) {
+      return null;
+    }
+    DescriptionMatch match = new DescriptionMatch();
+    match.setStreet(street);
+    match.setCity(city);
+    if (streetHasNumber) {
+      String number = tokens.get(streetEnd);
+      int digitsStart = firstDigit(number);
+      int digitsEnd = digitsStart;
+      while (digitsEnd < number.length() && Character.isDigit(number.charAt(digitsEnd))) {
+        digitsEnd++;
+      }
+      match.setHouseNumber(number.substring(digitsStart, digitsEnd));
+      boolean letter = digitsEnd < number.length() && number.charAt(digitsEnd) >= 'a' && number.charAt(digitsEnd) <= 'z';
+      match.setHouseNumberAffix(letter ? number.substring(digitsEnd, digitsEnd + 1) : "");
+    }
+    return match;
+  }
+
+  private int wordId(String token) {
+    Integer wordId = wordIds.get(token);
+    if (wordId != null) {
+      return wordId;
+    }
+    if (token.length() < MIN_FUZZY_LENGTH || firstDigit(token) >= 0) {
+      return -1;
+    }
+    for (int skip = -1; skip < token.length(); skip++) {
+      long key = hash(token, skip);
+      for (int i = firstIndex(key); i >= 0 && i < deletionKeys.length && deletionKeys[i] == key; i++) {
+        if (withinOneEdit(token, words.get(deletionWords[i]))) {
+          return deletionWords[i];
+        }
+      }
+    }
+    return -1;
+  }
+
+  private int firstIndex(long key) {
+    int index = Arrays.binarySearch(deletionKeys, key);
+    while (index > 0 && deletionKeys[index - 1] == key) {
+      index--;
+    }
+    return index;
+  }
+
+  private static long edge(int node, int wordId) {
+    return ((long) node << 32) | wordId;
+  }
+
+  /**
+   * FNV-1a hash of the word with the character at {@code skip} left out; -1 keeps the whole word.
+   */
+  private static long hash(String word, int skip) {
+    long hash = 0xcbf29ce484222325L;
+    for (int i = 0; i < word.length(); i++) {
+      if (i != skip) {
+        hash ^= word.charAt(i);
+        hash *= 0x100000001b3L;
+      }
+    }
+    return hash;
+  }
+
+  static boolean withinOneEdit(String a, String b) {
+    if (Math.abs(a.length() - b.length()) > 1) {
+      return false;
+    }
+    String shorter = a.length() <= b.length() ? a : b;
+    String longer = a.length() <= b.length() ? b : a;
+    int i = 0;
+    while (i < shorter.length() && shorter.charAt(i) == longer.charAt(i)) {
+      i++;
+    }
+    if (shorter.length() == longer.length()) {
+      return shorter.regionMatches(i + 1, longer, i + 1, shorter.length() - i - 1);
+    }
+    return shorter.regionMatches(i, longer, i + 1, shorter.length() - i);
+  }
+
+  private static int firstDigit(String token) {
+    for (int i = 0; i < token.length(); i++) {
+      if (Character.isDigit(token.charAt(i))) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Lower case words, split on white space and commas, without surrounding punctuation.
+   */
+  static List<String> split(String text) {
+    List<String> result = new ArrayList<>();
+    int length = text.length();
+    int start = 0;
+    while (start < length) {
+      while (start < length && isSeparator(text.charAt(start))) {
+        start++;
+      }
+      int end = start;
+      while (end < length && !isSeparator(text.charAt(end))) {
+        end++;
+      }
+      int wordEnd = end;
+      while (wordEnd > start && isPunctuation(text.charAt(wordEnd - 1))) {
+        wordEnd--;
+      }
+      int wordStart = start;
+      while (wordStart < wordEnd && isPunctuation(text.charAt(wordStart))) {
+        wordStart++;
+      }
+      if (wordStart < wordEnd) {
+        result.add(text.substring(wordStart, wordEnd).toLowerCase());
+      }
+      start = end;
+    }
+    return result;
+  }
+
+  private static boolean isSeparator(char c) {
+    return Character.isWhitespace(c) || c == ',';
+  }
+
+  private static boolean isPunctuation(char c) {
+    return c == '.' || c == ';' || c == ':' || c == '(' || c == ')' || c == '"';
+  }
+
+  /**
+   * Open addressing map from long to non negative int, returning -1 for missing keys.
+   */
+  private static class LongIntMap {
+    private long[] keys = new long[1024];
+    private int[] values = new int[1024];
+    private boolean[] used = new boolean[1024];
+    private int size;
+
+    int get(long key) {
+      int mask = keys.length - 1;
+      for (int slot = slot(key, mask); used[slot]; slot = (slot + 1) & mask) {
+        if (keys[slot] == key) {
+          return values[slot];
+        }
+      }
+      return -1;
+    }
+
+    void put(long key, int value) {
+      if (size * 2 >= keys.length) {
+        grow();
+      }
+      int mask = keys.length - 1;
+      int slot = slot(key, mask);
+      while (used[slot] && keys[slot] != key) {
+        slot = (slot + 1) & mask;
+      }
+      if (!used[slot]) {
+        used[slot] = true;
+        size++;
+      }
+      keys[slot] = key;
+      values[slot] = value;
+    }
+
+    private void grow() {
+      long[] oldKeys = keys;
+      int[] oldValues = values;
+      boolean[] oldUsed = used;
+      keys = new long[oldKeys.length * 2];
+      values = new int[oldKeys.length * 2];
+      used = new boolean[oldKeys.length * 2];
+      size = 0;
+      for (int i = 0; i < oldKeys.length; i++) {
+        if (oldUsed[i]) {
+          put(oldKeys[i], oldValues[i]);
+        }
+      }
+    }
+
+    private static int slot(long key, int mask) {
+      long hash = key * 0x9E3779B97F4A7C15L;
+      return (int) (hash >>> 32) & mask;
+    }
+  }
+}
@@ -0,0 +1,55 @@
+package net.weverwijk.address.cleaner;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenFilter;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.core.KeywordTokenizer;
+import org.apache.lucene.analysis.core.LowerCaseFilter;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Like {@link SimpleLowerCaseKeywordAnalyzer}, after rewriting the value with the place or street rules, so the
+ * indexed terms are the names inputs are normalized to. The stored value is kept as it is.
+ */
+class SynonymKeywordAnalyzer extends Analyzer {
+  private final AddressSynonyms synonyms;
+  private final boolean street;
+
+  SynonymKeywordAnalyzer(AddressSynonyms synonyms, boolean street) {
+    this.synonyms = synonyms;
+    this.street = street;
+  }
+
+  @Override
+  protected TokenStreamComponents createComponents(String fieldName, Reader reader) {
+    KeywordTokenizer keywordTokenizer = new KeywordTokenizer(reader);
+    return new TokenStreamComponents(keywordTokenizer, new LowerCaseFilter(new SynonymFilter(keywordTokenizer, synonyms, street)));
+  }
+
+  private static class SynonymFilter extends TokenFilter {
+    private final CharTermAttribute termAttribute = addAttribute(CharTermAttribute.class);
+    private final AddressSynonyms synonyms;
+    private final boolean street;
+
+    private SynonymFilter(TokenStream input, AddressSynonyms synonyms, boolean street) {
+      super(input);
+      this.synonyms = synonyms;
+      this.street = street;
+    }
+
+    @Override
+    public boolean incrementToken() throws IOException {
+      if (!input.incrementToken()) {
+        return false;
+      }
+      String rewritten = street ? synonyms.rewriteStreet(termAttribute) : synonyms.rewritePlace(termAttribute);
+      if (rewritten != null) {
+        termAttribute.setEmpty().append(rewritten);
+      }
+      return true;
+    }
+  }
+}
@@ -0,0 +1,130 @@
+package net.weverwijk.address.cleaner;
+
+import org.apache.lucene.queryparser.classic.ParseException;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+
+public class AddressCacheTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private PostcodeCheck postcodeCheck;
+
+  @Before
+  public void before() throws IOException {
+    postcodeCheck = new PostcodeCheck();
+    postcodeCheck.loadAddresses(PostcodeCheckTest.testAddresses());
+  }
+
+  @Test
+  public void testRepeatedLookupIsServedFromCache() throws IOException, ParseException {
+    AddressCache cache = new AddressCache(100, 1, TimeUnit.HOURS);
+    postcodeCheck.setCache(cache);
+
+    Address first = postcodeCheck.getAddress(new Address(null, "Deurne", null, "Milhezerweg 55b", null, null));
+    first.setHouseNumber("1");
+    Address second = postcodeCheck.getAddress(new Address(null, "Deurne", null, "Milhezerweg 55b", null, null));
+    assertNotSame(first, second);
+    assertEquals("55", second.getHouseNumber());
+    assertEquals("b", second.getHouseNumberAffix());
+    assertEquals("5751AA", second.getPostcode());
+    assertEquals(1, cache.getMissCount());
+    assertEquals(1, cache.getHitCount());
+  }
+
+  @Test
+  public void testNotFoundIsCached() throws IOException, ParseException {
+    AddressCache cache = new AddressCache(100, 1, TimeUnit.HOURS);
+    postcodeCheck.setCache(cache);
+
+    assertNull(postcodeCheck.getAddress(new Address(null, null, null, null, null, null)));
+    assertNull(postcodeCheck.getAddress(new Address(null, null, null, null, null, null)));
+    assertEquals(1, cache.getHitCount());
+  }
+
+  @Test
+  public void testSizeAndTimeEviction() throws IOException, ParseException, InterruptedException {
+    AddressCache cache = new AddressCache(1, 1, TimeUnit.HOURS);
+    postcodeCheck.setCache(cache);
+    postcodeCheck.getAddress(new Address("1011AD", null, null, null, "1", null));
+    postcodeCheck.getAddress(new Address("1011AD", null, null, null, "3", null));
+    postcodeCheck.getAddress(new Address("1011AD", null, null, null, "5", null));
+    assertEquals(1, cache.size());
+    assertEquals(2, cache.getEvictionCount());
+
+    // the segments share the maximum size without rounding up
+    AddressCache segmented = new AddressCache(20, 1, TimeUnit.HOURS);
+    postcodeCheck.setCache(segmented);
+    for (int number = 1; number <= 100; number++) {
+      postcodeCheck.getAddress(new Address("1071AB", null, null, null, String.valueOf(number), null));
+    }
+    assertEquals(20, segmented.size());
+
+    AddressCache expiring = new AddressCache(100, 1, TimeUnit.MILLISECONDS);
+    postcodeCheck.setCache(expiring);
+    postcodeCheck.getAddress(new Address("1011AD", null, null, null, "1", null));
+    Thread.sleep(5);
+    postcodeCheck.getAddress(new Address("1011AD", null, null, null, "1", null));
+    assertEquals(0, expiring.getHitCount());
+    assertEquals(1, expiring.getEvictionCount());
+  }
+
+  @Test
+  public void testReloadInvalidatesCache() throws IOException, ParseException {
+    AddressCache cache = new AddressCache(100, 1, TimeUnit.HOURS);
+    postcodeCheck.setCache(cache);
+    postcodeCheck.getAddress(new Address("1011AD", null, null, null, "1", null));
+    assertEquals(1, cache.size());
+
+    postcodeCheck.loadAddresses(PostcodeCheckTest.testAddresses());
+    assertEquals(0, cache.size());
+  }
+
+  @Test
+  public void testReloadDuringBatchIsNotCached() throws IOException, ParseException {
+    AddressCache cache = new AddressCache(100, 1, TimeUnit.HOURS);
+    postcodeCheck.setCache(cache);
+    final File changed = folder.newFile("postcode.csv");
+    try (PrintWriter writer = new PrintWriter(changed, "UTF-8")) {
+      writer.println("\"postcode\";\"city\";\"municipality\";\"street\";\"numbertype\";\"minnumber\";\"maxnumber\"");
+      writer.println("\"3511AB\";\"Utrecht\";\"Utrecht\";\"Lange Viestraat\";\"mixed\";\"1\";\"40\"");
+    }
+    // reloads after the first lookup of the batch, the rest of the batch still searches the previous index
+    postcodeCheck.setListener(new PostcodeCheckMetrics() {
+      private boolean reloaded;
+
+      @Override
+      public void lookupCompleted(MatchSource source) {
+        super.lookupCompleted(source);
+        if (!reloaded) {
+          reloaded = true;
+          try {
+            postcodeCheck.loadAddresses(changed.getPath());
+          } catch (IOException e) {
+            throw new IllegalStateException(e);
+          }
+        }
+      }
+    });
+    List<Address> found = postcodeCheck.getAddresses(Arrays.asList(
+        new Address("1011AD", null, null, null, "1", null), new Address("3511AB", null, null, null, "12", null)));
+    assertEquals("Vredenburg", found.get(1).getStreet());
+
+    postcodeCheck.setListener(null);
+    assertEquals("Lange Viestraat", postcodeCheck.getAddress(new Address("3511AB", null, null, null, "12", null)).getStreet());
+  }
+}
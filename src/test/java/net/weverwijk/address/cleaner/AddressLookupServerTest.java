@@ -0,0 +1,213 @@
+package net.weverwijk.address.cleaner;
+
+import org.junit.After;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class AddressLookupServerTest {
+
+  private static PostcodeCheck postcodeCheck;
+  private AddressLookupServer server;
+
+  @BeforeClass
+  public static void beforeOnce() throws IOException {
+    // see AddressLookupServer, without it every response waits for a delayed ack
+    System.setProperty("sun.net.httpserver.nodelay", "true");
+    postcodeCheck = new PostcodeCheck();
+    postcodeCheck.loadAddresses(PostcodeCheckTest.testAddresses());
+  }
+
+  @After
+  public void after() {
+    if (server != null) {
+      server.close();
+    }
+  }
+
+  @Test
+  public void testSingleLookup() throws IOException {
+    start(new LookupServerSettings());
+    Response response = post("/address", "{\"street\": \"Milhezerweg 55\", \"city\": \"Deurne\"}");
+    assertEquals(200, response.status);
+    Map<?, ?> found = (Map<?, ?>) Json.parse(response.body);
+    assertEquals("5751AA", found.get("postcode"));
+    assertEquals("55", found.get("houseNumber"));
+
+    assertEquals(404, post("/address", "{\"street\": \"Qwxzq\", \"city\": \"Zzyxw\"}").status);
+  }
+
+  @Test
+  public void testBulkLookup() throws IOException {
+    start(new LookupServerSettings());
+    Response response = post("/addresses", "[{\"street\": \"Milhezerweg 56\", \"city\": \"Deurne\"},"
+        + " {\"street\": \"Qwxzq\", \"city\": \"Zzyxw\"}, {\"postcode\": \"1011 AD\", \"houseNumber\": 17}]");
+    assertEquals(200, response.status);
+    List<?> found = (List<?>) Json.parse(response.body);
+    assertEquals(3, found.size());
+    assertEquals("5751AB", ((Map<?, ?>) found.get(0)).get("postcode"));
+    assertNull(found.get(1));
+    assertEquals("Dorpstraat", ((Map<?, ?>) found.get(2)).get("street"));
+  }
+
+  @Test
+  public void testRejectsBadRequests() throws IOException {
+    LookupServerSettings settings = new LookupServerSettings();
+    settings.setMaxBulkSize(1);
+    start(settings);
+    assertEquals(400, post("/address", "{\"street\": ").status);
+    assertEquals(400, post("/address", "[]").status);
+    assertEquals(413, post("/addresses", "[{}, {}]").status);
+
+    HttpURLConnection connection = (HttpURLConnection) url("/address").openConnection();
+    assertEquals(405, connection.getResponseCode());
+  }
+
+  @Test
+  public void testRejectsLargeBodies() throws IOException {
+    LookupServerSettings settings = new LookupServerSettings();
+    settings.setMaxBodyBytes(64);
+    start(settings);
+    String small = "{\"street\": \"Milhezerweg 55\", \"city\": \"Deurne\"}";
+    String large = "{\"street\": \"Milhezerweg 55\", \"city\": \"Deurne\", \"country\": \"Nederland, Nederland\"}";
+    assertEquals(200, post("/address", small, false).status);
+    assertEquals(200, post("/address", small, true).status);
+    // refused on its Content-Length, and while reading when it is sent in chunks
+    assertEquals(413, post("/address", large, false).status);
+    assertEquals(413, post("/address", large, true).status);
+  }
+
+  @Test
+  public void testRefusesWhenSaturated() throws IOException, InterruptedException {
+    LookupServerSettings settings = new LookupServerSettings();
+    settings.setMaxInFlight(1);
+    start(settings);
+    // a request whose body never comes holds the only slot, unless the lookup got in before it was handled
+    int status = 0;
+    for (int attempt = 0; attempt < 20 && status != 429; attempt++) {
+      try (Socket slow = new Socket(InetAddress.getLoopbackAddress(), server.getPort())) {
+        OutputStream out = slow.getOutputStream();
+        out.write(("POST /address HTTP/1.1\r\nHost: localhost\r\nContent-Length: 100\r\n\r\n{")
+            .getBytes(StandardCharsets.US_ASCII));
+        out.flush();
+        Thread.sleep(50);
+        status = post("/address", "{\"street\": \"Milhezerweg 55\", \"city\": \"Deurne\"}").status;
+      }
+    }
+    assertEquals(429, status);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testNeedsRoomForOneRequest() throws IOException {
+    LookupServerSettings settings = new LookupServerSettings();
+    settings.setMaxInFlight(0);
+    start(settings);
+  }
+
+  @Test
+  public void testListensOnLoopbackByDefault() throws IOException {
+    start(new LookupServerSettings());
+    assertTrue(server.getAddress().getAddress().isLoopbackAddress());
+  }
+
+  @Test
+  public void testConcurrentLookupsAreBatched() throws Exception {
+    LookupServerSettings settings = new LookupServerSettings();
+    settings.setBatchSize(8);
+    settings.setBatchWindowMicros(2000);
+    start(settings);
+    ExecutorService clients = Executors.newFixedThreadPool(8);
+    try {
+      List<Future<Response>> responses = new ArrayList<>();
+      for (int i = 0; i < 40; i++) {
+        final String body = i % 2 == 0
+            ? "{\"street\": \"Milhezerweg 55\", \"city\": \"Deurne\"}"
+            : "{\"street\": \"Kerkstraat 4\", \"city\": \"'s-Hertogenbosch\"}";
+        responses.add(clients.submit(new Callable<Response>() {
+          @Override
+          public Response call() throws IOException {
+            return post("/address", body);
+          }
+        }));
+      }
+      for (int i = 0; i < responses.size(); i++) {
+        Response response = responses.get(i).get();
+        assertEquals(200, response.status);
+        assertEquals(i % 2 == 0 ? "5751AA" : "5211AC", ((Map<?, ?>) Json.parse(response.body)).get("postcode"));
+      }
+    } finally {
+      clients.shutdownNow();
+    }
+  }
+
+  private void start(LookupServerSettings settings) throws IOException {
+    settings.setPort(0);
+    server = new AddressLookupServer(postcodeCheck, settings);
+    server.start();
+  }
+
+  private URL url(String path) throws IOException {
+    return new URL("http://localhost:" + server.getPort() + path);
+  }
+
+  private Response post(String path, String body) throws IOException {
+    return post(path, body, false);
+  }
+
+  private Response post(String path, String body, boolean chunked) throws IOException {
+    HttpURLConnection connection = (HttpURLConnection) url(path).openConnection();
+    connection.setRequestMethod("POST");
+    connection.setDoOutput(true);
+    if (chunked) {
+      connection.setChunkedStreamingMode(16);
+    }
+    try (OutputStream out = connection.getOutputStream()) {
+      out.write(body.getBytes(StandardCharsets.UTF_8));
+    }
+    int status = connection.getResponseCode();
+    InputStream in = status < 400 ? connection.getInputStream() : connection.getErrorStream();
+    ByteArrayOutputStream content = new ByteArrayOutputStream();
+    if (in != null) {
+      try {
+        byte[] buffer = new byte[1024];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+          content.write(buffer, 0, read);
+        }
+      } finally {
+        in.close();
+      }
+    }
+    return new Response(status, new String(content.toByteArray(), StandardCharsets.UTF_8));
+  }
+
+  private static class Response {
+    private final int status;
+    private final String body;
+
+    private Response(int status, String body) {
+      this.status = status;
+      this.body = body;
+    }
+  }
+}
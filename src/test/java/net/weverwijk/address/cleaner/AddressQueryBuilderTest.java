@@ -0,0 +1,25 @@
+package net.weverwijk.address.cleaner;
+
+import org.apache.lucene.analysis.nl.DutchAnalyzer;
+import org.apache.lucene.search.BooleanQuery;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class AddressQueryBuilderTest {
+
+  private final AddressQueryBuilder queryBuilder = new AddressQueryBuilder(new DutchAnalyzer());
+
+  @Test
+  public void testDescriptionIsAnalyzed() {
+    BooleanQuery query = (BooleanQuery) queryBuilder.build(new Address(null, null, null, null, null, null, "Dorpstraat 28 te Amsterdam"));
+    assertEquals(1, query.clauses().size());
+    assertEquals("complete:dorpstrat complete:28 complete:amsterdam", query.clauses().get(0).getQuery().toString());
+  }
+
+  @Test
+  public void testStopWordsOnlyAddNoClause() {
+    BooleanQuery query = (BooleanQuery) queryBuilder.build(new Address(null, null, null, null, null, null, "de het te"));
+    assertEquals(0, query.clauses().size());
+  }
+}
@@ -0,0 +1,58 @@
+package net.weverwijk.address.cleaner;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertSame;
+
+public class AddressSynonymsTest {
+
+  @Test
+  public void testPlaces() {
+    AddressSynonyms synonyms = AddressSynonyms.bundled();
+    assertEquals("'s-Gravenhage", synonyms.normalizePlace("den haag"));
+    // the old map only knew the lower case spelling
+    assertEquals("'s-Gravenhage", synonyms.normalizePlace("Den Haag"));
+    assertEquals("'s-Gravenhage", synonyms.normalizePlace("DEN  HAAG"));
+    assertEquals("'s-Hertogenbosch", synonyms.normalizePlace("Den Bosch"));
+    String unknown = "Den Haag Centrum";
+    assertSame(unknown, synonyms.normalizePlace(unknown));
+    assertSame(unknown, synonyms.normalizePlace(unknown));
+  }
+
+  @Test
+  public void testStreets() {
+    AddressSynonyms synonyms = AddressSynonyms.bundled();
+    assertEquals("Kerkstraat", synonyms.normalizeStreet("Kerkstr."));
+    assertEquals("Oudegracht", synonyms.normalizeStreet("Oudegr."));
+    assertEquals("Burgemeester de Vrieslaan", synonyms.normalizeStreet("Burg. de Vriesln."));
+    assertEquals("Prins Hendrikstraat 12", synonyms.normalizeStreet("pr. Hendrikstr. 12"));
+    // only abbreviations marked as suffix are matched inside a word
+    String street = "Vredenburg.";
+    assertSame(street, synonyms.normalizeStreet(street));
+    assertEquals("Kerk straat", synonyms.normalizeStreet("Kerk str."));
+  }
+
+  @Test
+  public void testLoad() throws IOException {
+    AddressSynonyms synonyms = AddressSynonyms.load(
+        new StringReader("# comment\nmokum, a'dam => Amsterdam\n\n"),
+        new StringReader("ws. => Wilhelmina Singel\n-wg. => weg # comment\n"));
+    assertEquals("Amsterdam", synonyms.normalizePlace("Mokum"));
+    assertEquals("Amsterdam", synonyms.normalizePlace("A'dam"));
+    assertEquals("Wilhelmina Singel 3", synonyms.normalizeStreet("ws. 3"));
+    assertEquals("Milhezerweg", synonyms.normalizeStreet("Milhezerwg."));
+    assertEquals("wg.", synonyms.normalizeStreet("wg."));
+    assertNotEquals(AddressSynonyms.bundled().getVersion(), synonyms.getVersion());
+    assertEquals(AddressSynonyms.bundled().getVersion(), AddressSynonyms.bundled().getVersion());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testMalformedRule() throws IOException {
+    AddressSynonyms.load(new StringReader("mokum Amsterdam"), new StringReader(""));
+  }
+}
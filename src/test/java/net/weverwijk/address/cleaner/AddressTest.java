@@ -76,4 +76,22 @@ public class AddressTest {
     }
   }
 
+  @Test
+  public void testStreetEndingInSeparatorLettersIsKept() {
+    Address address = new Address(null, null, null, "Groenen", null, null);
+    assertEquals("Groenen", address.getStreet());
+    assertEquals(null, address.getHouseNumber());
+
+    address = new Address(null, null, null, "Molenveen 12", null, null);
+    assertEquals("Molenveen", address.getStreet());
+    assertEquals("12", address.getHouseNumber());
+  }
+
+  @Test
+  public void testOnlyTrailingHouseNumberIsRemoved() {
+    Address address = new Address(null, null, null, "Laan 1940 1940", null, null);
+    assertEquals("Laan 1940", address.getStreet());
+    assertEquals("1940", address.getHouseNumber());
+  }
+
 }
\ No newline at end of file
@@ -0,0 +1,54 @@
+package net.weverwijk.address.cleaner;
+
+import org.apache.lucene.queryparser.classic.ParseException;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class BatchCleanerTest {
+
+  private static PostcodeCheck postcodeCheck;
+
+  @BeforeClass
+  public static void beforeOnce() throws IOException {
+    postcodeCheck = new PostcodeCheck();
+    postcodeCheck.loadAddresses(PostcodeCheckTest.testAddresses());
+  }
+
+  @Test
+  public void testResultsAreInInputOrder() throws IOException, ParseException {
+    List<String[]> expected = Arrays.asList(
+        new String[]{"Milhezerweg 55", "Deurne", "5751AA"},
+        new String[]{"Milhezerweg 56", "Deurne", "5751AB"},
+        new String[]{"Kerkstraat 3", "'s-Hertogenbosch", "5211AB"},
+        new String[]{"Kerkstraat 4", "'s-Hertogenbosch", "5211AC"},
+        new String[]{"Vredenburg 1", "Utrecht", "3511AB"});
+    List<Address> input = new ArrayList<>();
+    for (int i = 0; i < 50; i++) {
+      String[] value = expected.get(i % expected.size());
+      input.add(new Address(null, value[1], null, value[0], null, null));
+    }
+
+    try (BatchCleaner cleaner = new BatchCleaner(postcodeCheck, 4, 3)) {
+      List<Address> result = cleaner.cleanAll(input);
+      assertEquals(input.size(), result.size());
+      for (int i = 0; i < result.size(); i++) {
+        assertEquals(expected.get(i % expected.size())[2], result.get(i).getPostcode());
+      }
+    }
+  }
+
+  @Test
+  public void testEmptyInput() throws IOException, ParseException {
+    try (BatchCleaner cleaner = new BatchCleaner(postcodeCheck)) {
+      assertTrue(cleaner.cleanAll(new ArrayList<Address>()).isEmpty());
+    }
+  }
+}
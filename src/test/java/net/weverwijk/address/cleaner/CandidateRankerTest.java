@@ -0,0 +1,55 @@
+package net.weverwijk.address.cleaner;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class CandidateRankerTest {
+
+  @Test
+  public void testDistanceMatchesAddress() {
+    String[] streets = {"Dorpstraat", "dorpstraat", "Dorpstaat", "Kerkstraat", "Van Baerlestraat", "Oudegracht", "", "Eik"};
+    String[] cities = {"Amsterdam", "amsterdam", "Deurne", "'s-Hertogenbosch", "Den Bosch", "Utrecht"};
+    String[] postcodes = {"1011AC", "1011ac", "1011AD", "5751AA", "3511AB"};
+    Random random = new Random(7);
+    for (int i = 0; i < 2000; i++) {
+      Address query = Address.fromIndex(pick(random, postcodes), pick(random, cities), null, pick(random, streets));
+      Address candidate = Address.fromIndex(pick(random, postcodes), pick(random, cities), pick(random, cities), pick(random, streets));
+      int expected = candidate.getLevenshteinDistance(query);
+      CandidateRanker ranker = new CandidateRanker(query);
+      assertEquals(query + " / " + candidate, expected, ranker.distance(candidate, Integer.MAX_VALUE));
+      int max = random.nextInt(10);
+      int bounded = ranker.distance(candidate, max);
+      assertTrue(expected <= max ? bounded == expected : bounded > max);
+    }
+  }
+
+  @Test
+  public void testMissingQueryFieldsAreIgnored() {
+    CandidateRanker ranker = new CandidateRanker(Address.fromIndex(null, null, null, "Dorpstraat"));
+    assertEquals(0, ranker.distance(Address.fromIndex("1011AC", "Amsterdam", "Amsterdam", "Dorpstraat"), 5));
+  }
+
+  @Test
+  public void testFirstClosestCandidateWins() {
+    CandidateRanker ranker = new CandidateRanker(Address.fromIndex(null, "Deurne", null, "Dorpstraat"));
+    Address far = Address.fromIndex("1011AC", "Amsterdam", "Amsterdam", "Dorpstraat");
+    Address close = Address.fromIndex("5751AC", "Deurne", "Deurne", "Dorpsstraat");
+    Address tie = Address.fromIndex("5751AD", "Deurne", "Deurne", "Dorpstrat");
+    ranker.offer(far);
+    ranker.offer(close);
+    ranker.offer(tie);
+    assertSame(close, ranker.getBest());
+    assertTrue(!ranker.isExact());
+    ranker.offer(Address.fromIndex("5751AC", "deurne", "Deurne", "DORPSTRAAT"));
+    assertTrue(ranker.isExact());
+  }
+
+  private static String pick(Random random, String[] values) {
+    return values[random.nextInt(values.length)];
+  }
+}
@@ -0,0 +1,128 @@
+package net.weverwijk.address.cleaner;
+
+import au.com.bytecode.opencsv.CSVReader;
+import org.apache.lucene.queryparser.classic.ParseException;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+public class CsvCleaningPipelineTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void testCleanKeepsOrderAndReportsStatus() throws IOException, ParseException {
+    File input = writeInput(60);
+    File output = folder.newFile("output.csv");
+    File checkpoint = new File(folder.getRoot(), "output.checkpoint");
+
+    try (CsvCleaningPipeline pipeline = newPipeline()) {
+      assertEquals(60, pipeline.clean(input, output, checkpoint));
+    }
+    assertFalse(checkpoint.exists());
+
+    List<String[]> rows = read(output);
+    assertEquals(61, rows.size());
+    assertEquals("status", rows.get(0)[rows.get(0).length - 1]);
+    for (int i = 1; i < rows.size(); i++) {
+      String[] row = rows.get(i);
+      assertEquals(Integer.toString(i), row[0]);
+      switch (i % 3) {
+        case 0:
+          assertArrayEquals(new String[]{"1011AD", "Dorpstraat", "17", "", "Amsterdam", "Amsterdam", "MATCHED"},
+              Arrays.copyOfRange(row, 5, 12));
+          break;
+        case 1:
+          assertEquals("5751AA", row[5]);
+          assertEquals("FALLBACK", row[11]);
+          break;
+        default:
+          assertEquals("NOT_FOUND", row[11]);
+      }
+    }
+  }
+
+  @Test
+  public void testResumeFromCheckpoint() throws IOException, ParseException {
+    File input = writeInput(60);
+    File expected = folder.newFile("expected.csv");
+    try (CsvCleaningPipeline pipeline = newPipeline()) {
+      pipeline.clean(input, expected, null);
+    }
+
+    // a crashed run: the checkpoint covers the header and 20 rows, followed by a half written row
+    File output = folder.newFile("output.csv");
+    byte[] complete = Files.readAllBytes(expected.toPath());
+    int checkpointed = 0;
+    for (int lines = 0; lines < 21; checkpointed++) {
+      if (complete[checkpointed] == '\n') {
+        lines++;
+      }
+    }
+    try (RandomAccessFile file = new RandomAccessFile(output, "rw")) {
+      file.write(complete, 0, checkpointed + 10);
+    }
+    File checkpoint = folder.newFile("output.checkpoint");
+    try (PrintWriter writer = new PrintWriter(checkpoint, "UTF-8")) {
+      writer.println("records=20");
+      writer.println("outputBytes=" + checkpointed);
+    }
+
+    try (CsvCleaningPipeline pipeline = newPipeline()) {
+      assertEquals(60, pipeline.clean(input, output, checkpoint));
+    }
+    assertArrayEquals(complete, Files.readAllBytes(output.toPath()));
+  }
+
+  private CsvCleaningPipeline newPipeline() throws IOException {
+    PostcodeCheck postcodeCheck = new PostcodeCheck();
+    postcodeCheck.loadAddresses(PostcodeCheckTest.testAddresses());
+    CsvColumnMapping mapping = new CsvColumnMapping();
+    mapping.setHouseNumber("number");
+    mapping.setDescription(null);
+    CsvCleaningPipeline pipeline = new CsvCleaningPipeline(postcodeCheck, mapping, 3);
+    pipeline.setBatchSize(4);
+    pipeline.setCheckpointInterval(8);
+    return pipeline;
+  }
+
+  private File writeInput(int rows) throws IOException {
+    File input = folder.newFile();
+    try (PrintWriter writer = new PrintWriter(input, "UTF-8")) {
+      writer.println("id;postcode;street;number;city");
+      for (int i = 1; i <= rows; i++) {
+        switch (i % 3) {
+          case 0:
+            writer.println(i + ";1011 ad;;17;");
+            break;
+          case 1:
+            writer.println(i + ";;Milhezerweg 55;;Deurne");
+            break;
+          default:
+            writer.println(i + ";;Qwxzq;;Zzyxw");
+        }
+      }
+    }
+    return input;
+  }
+
+  private List<String[]> read(File file) throws IOException {
+    try (CSVReader reader = new CSVReader(new FileReader(file), ';', '\"')) {
+      return reader.readAll();
+    }
+  }
+}
@@ -0,0 +1,87 @@
+package net.weverwijk.address.cleaner;
+
+import org.apache.lucene.queryparser.classic.ParseException;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class MicroBatcherTest {
+
+  @Test(expected = IOException.class)
+  public void testLookupsFailOnceClosed() throws IOException, ParseException {
+    PostcodeCheck postcodeCheck = new PostcodeCheck();
+    postcodeCheck.loadAddresses(PostcodeCheckTest.testAddresses());
+    MicroBatcher batcher = new MicroBatcher(postcodeCheck, 4, TimeUnit.MICROSECONDS.toNanos(500), 1);
+    Address address = new Address(null, "Deurne", null, "Milhezerweg 55", null, null);
+    assertEquals("5751AA", batcher.getAddress(address).getPostcode());
+
+    batcher.close();
+    batcher.getAddress(address);
+  }
+
+  @Test
+  public void testFailingLookupOnlyFailsItself() throws Exception {
+    PostcodeCheck postcodeCheck = new PostcodeCheck() {
+      @Override
+      public Address getAddress(Address address) throws IOException, ParseException {
+        if ("Broken".equals(address.getCity())) {
+          throw new IllegalStateException("broken input");
+        }
+        return super.getAddress(address);
+      }
+
+      @Override
+      public List<Address> getAddresses(List<Address> addresses) throws IOException, ParseException {
+        for (Address address : addresses) {
+          if ("Broken".equals(address.getCity())) {
+            throw new IllegalStateException("broken input");
+          }
+        }
+        return super.getAddresses(addresses);
+      }
+    };
+    postcodeCheck.loadAddresses(PostcodeCheckTest.testAddresses());
+    // a window long enough for all four lookups to end up in one batch
+    final MicroBatcher batcher = new MicroBatcher(postcodeCheck, 4, TimeUnit.SECONDS.toNanos(1), 1);
+    ExecutorService callers = Executors.newFixedThreadPool(4);
+    try {
+      List<Future<Address>> results = new ArrayList<>();
+      for (final Address address : new Address[]{
+          new Address(null, "Deurne", null, "Milhezerweg 55", null, null),
+          new Address(null, "Broken", null, "Milhezerweg 55", null, null),
+          new Address(null, "Deurne", null, "Milhezerweg 56", null, null),
+          new Address("1011AD", null, null, null, "17", null)}) {
+        results.add(callers.submit(new Callable<Address>() {
+          @Override
+          public Address call() throws Exception {
+            return batcher.getAddress(address);
+          }
+        }));
+      }
+      assertEquals("5751AA", results.get(0).get().getPostcode());
+      try {
+        results.get(1).get();
+        fail("expected the broken lookup to fail");
+      } catch (ExecutionException e) {
+        assertTrue(e.getCause() instanceof IllegalStateException);
+      }
+      assertEquals("5751AB", results.get(2).get().getPostcode());
+      assertEquals("1011AD", results.get(3).get().getPostcode());
+    } finally {
+      callers.shutdownNow();
+      batcher.close();
+    }
+  }
+}
@@ -0,0 +1,68 @@
+package net.weverwijk.address.cleaner;
+
+import org.apache.lucene.queryparser.classic.ParseException;
+import org.junit.Test;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class PostcodeCheckMetricsTest {
+
+  @Test
+  public void testLookupsAreMeasured() throws IOException, ParseException {
+    PostcodeCheckMetrics metrics = new PostcodeCheckMetrics();
+    PostcodeCheck postcodeCheck = new PostcodeCheck();
+    postcodeCheck.setListener(metrics);
+    postcodeCheck.loadAddresses(PostcodeCheckTest.testAddresses());
+    assertEquals(11, metrics.getIndexDocuments());
+    assertTrue(metrics.getIndexSizeBytes() > 0);
+
+    postcodeCheck.getAddress(new Address(null, "Deurne", null, "Milhezerweg 55", null, null));
+    postcodeCheck.getAddress(new Address(null, "Nergenshuizen", null, null, null, null));
+
+    assertEquals(2, metrics.getSearches());
+    assertEquals(1, metrics.getSearchesWithoutHits());
+    assertEquals(1, metrics.getCandidateCounts()[0]);
+    assertEquals(2, metrics.getSearchLatency().getCount());
+    assertEquals(2, metrics.getQueryBuildLatency().getCount());
+  }
+
+  @Test
+  public void testPublishedOverJmx() throws JMException {
+    PostcodeCheckMetrics metrics = new PostcodeCheckMetrics();
+    metrics.phaseCompleted(PostcodeCheckListener.Phase.SEARCH, 1500);
+    ObjectName name = metrics.register("test");
+    try {
+      MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+      CompositeData latency = (CompositeData) server.getAttribute(name, "SearchLatency");
+      assertEquals(1L, latency.get("count"));
+      assertEquals(1.5, (Double) latency.get("meanMicros"), 0.0001);
+    } finally {
+      ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+    }
+  }
+
+  @Test
+  public void testHistogramBuckets() {
+    for (long value : new long[]{0, 7, 8, 15, 16, 1000, 123456789L}) {
+      long lowerBound = LatencyHistogram.lowerBound(LatencyHistogram.bucket(value));
+      assertTrue(lowerBound <= value);
+      assertTrue(value - lowerBound <= value / 8);
+    }
+    LatencyHistogram histogram = new LatencyHistogram();
+    for (int i = 1; i <= 100; i++) {
+      histogram.record(i * 1000);
+    }
+    assertEquals(100, histogram.getCount());
+    assertEquals(50500, histogram.getMean());
+    assertTrue(Math.abs(histogram.getPercentile(50) - 50000) <= 50000 / 8);
+    assertTrue(Math.abs(histogram.getPercentile(99) - 99000) <= 99000 / 8);
+  }
+}
@@ -0,0 +1,359 @@
+package net.weverwijk.address.cleaner;
+
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.MultiFields;
+import org.apache.lucene.index.SegmentInfos;
+import org.apache.lucene.queryparser.classic.ParseException;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.util.BytesRef;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class PostcodeCheckTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  static String testAddresses() {
+    return PostcodeCheckTest.class.getClassLoader().getResource("postcode_test.csv").getFile();
+  }
+
+  @Test
+  public void testFindAddressByStreetAndCity() throws IOException, ParseException {
+    PostcodeCheck postcodeCheck = new PostcodeCheck();
+    postcodeCheck.loadAddresses(testAddresses());
+
+    Address found = postcodeCheck.getAddress(new Address(null, "Deurne", null, "Milhezerweg 55b", null, null));
+    assertEquals("5751AA", found.getPostcode());
+    assertEquals("Milhezerweg", found.getStreet());
+    assertEquals("55", found.getHouseNumber());
+    assertEquals("b", found.getHouseNumberAffix());
+  }
+
+  @Test
+  public void testPersistentIndexIsReusedWhenSourceIsUnchanged() throws IOException, ParseException {
+    File indexDirectory = folder.newFolder("index");
+    new PostcodeCheck(indexDirectory).loadAddresses(testAddresses());
+    long generation = lastCommitGeneration(indexDirectory);
+
+    PostcodeCheck reopened = new PostcodeCheck(indexDirectory);
+    reopened.loadAddresses(testAddresses());
+    assertEquals(generation, lastCommitGeneration(indexDirectory));
+
+    Address found = reopened.getAddress(new Address("3511AB", null, null, null, "12", null));
+    assertEquals("Vredenburg", found.getStreet());
+  }
+
+  @Test
+  public void testPersistentIndexIsRebuiltWhenSourceChanges() throws IOException, ParseException {
+    File indexDirectory = folder.newFolder("index");
+    File source = folder.newFile("postcode.csv");
+    Files.copy(new File(testAddresses()).toPath(), source.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    new PostcodeCheck(indexDirectory).loadAddresses(source.getPath());
+    long generation = lastCommitGeneration(indexDirectory);
+
+    try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(source.toPath(), StandardCharsets.UTF_8, StandardOpenOption.APPEND))) {
+      writer.println("\"9711AA\";\"Groningen\";\"Groningen\";\"Grote Markt\";\"mixed\";\"1\";\"50\"");
+    }
+    PostcodeCheck reopened = new PostcodeCheck(indexDirectory);
+    reopened.loadAddresses(source.getPath());
+    assertNotEquals(generation, lastCommitGeneration(indexDirectory));
+
+    Address found = reopened.getAddress(new Address(null, "Groningen", null, "Grote Markt 3", null, null));
+    assertEquals("9711AA", found.getPostcode());
+  }
+
+  @Test
+  public void testReloadIsVisibleToLookups() throws IOException, ParseException {
+    PostcodeCheck postcodeCheck = new PostcodeCheck();
+    postcodeCheck.loadAddresses(testAddresses());
+    assertEquals("Vredenburg", postcodeCheck.getAddress(new Address("3511AB", null, null, null, "12", null)).getStreet());
+
+    File source = folder.newFile("postcode.csv");
+    try (PrintWriter writer = new PrintWriter(source, "UTF-8")) {
+      writer.println("\"postcode\";\"city\";\"municipality\";\"street\";\"numbertype\";\"minnumber\";\"maxnumber\"");
+      writer.println("\"3511AB\";\"Utrecht\";\"Utrecht\";\"Lange Viestraat\";\"mixed\";\"1\";\"40\"");
+    }
+    postcodeCheck.loadAddresses(source.getPath());
+    assertEquals("Lange Viestraat", postcodeCheck.getAddress(new Address("3511AB", null, null, null, "12", null)).getStreet());
+  }
+
+  @Test
+  public void testConcurrentIndexingWithForceMerge() throws IOException, ParseException {
+    File indexDirectory = folder.newFolder("index");
+    PostcodeCheck postcodeCheck = new PostcodeCheck(indexDirectory);
+    IndexSettings settings = new IndexSettings();
+    settings.setIndexingThreads(3);
+    settings.setBatchSize(2);
+    settings.setForceMerge(true);
+    postcodeCheck.setIndexSettings(settings);
+    postcodeCheck.loadAddresses(testAddresses());
+
+    try (FSDirectory directory = FSDirectory.open(indexDirectory); DirectoryReader reader = DirectoryReader.open(directory)) {
+      assertEquals(11, reader.numDocs());
+      assertEquals(1, reader.leaves().size());
+    }
+    assertEquals("Kerkstraat", postcodeCheck.getAddress(new Address("5211AC", null, null, null, "4", null)).getStreet());
+  }
+
+  @Test
+  public void testCleanPostcodeAndHouseNumberIsAnsweredFromPostcodeTable() throws IOException, ParseException {
+    PostcodeCheck postcodeCheck = new PostcodeCheck();
+    postcodeCheck.loadAddresses(testAddresses());
+
+    Address found = postcodeCheck.getAddress(new Address("1011 ad", null, null, null, "17", null));
+    assertEquals(MatchSource.POSTCODE_TABLE, found.getMatchSource());
+    assertEquals("1011AD", found.getPostcode());
+    assertEquals("Dorpstraat", found.getStreet());
+    assertEquals("Amsterdam", found.getCity());
+    assertEquals("17", found.getHouseNumber());
+  }
+
+  @Test
+  public void testDirtyInputFallsBackToIndex() throws IOException, ParseException {
+    PostcodeCheck postcodeCheck = new PostcodeCheck();
+    postcodeCheck.loadAddresses(testAddresses());
+
+    // house number does not match the parity of 1011AD
+    assertEquals(MatchSource.INDEX, postcodeCheck.getAddress(new Address("1011AD", null, null, null, "18", null)).getMatchSource());
+    // street disagrees with the postcode
+    assertEquals(MatchSource.INDEX, postcodeCheck.getAddress(new Address("1011AD", null, null, "Dorpstaat", "17", null)).getMatchSource());
+    assertEquals(MatchSource.INDEX, postcodeCheck.getAddress(new Address(null, "Deurne", null, "Milhezerweg 55", null, null)).getMatchSource());
+  }
+
+  @Test
+  public void testDescriptionOnly() throws IOException, ParseException {
+    PostcodeCheck postcodeCheck = new PostcodeCheck();
+    postcodeCheck.loadAddresses(testAddresses());
+
+    Address found = postcodeCheck.getAddress(new Address(null, null, null, null, null, null, "Dorpstraat 28 te Amsterdam"));
+    assertEquals("Dorpstraat", found.getStreet());
+    assertEquals("Amsterdam", found.getCity());
+    assertEquals("28", found.getHouseNumber());
+    assertEquals("1011AC", found.getPostcode());
+
+    found = postcodeCheck.getAddress(new Address(null, null, null, null, null, null, "Levering: Dorpstraat 7, Deurne"));
+    assertEquals("Deurne", found.getCity());
+    assertEquals("5751AC", found.getPostcode());
+  }
+
+  @Test
+  public void testCompactSchema() throws IOException, ParseException {
+    File indexDirectory = folder.newFolder("index");
+    PostcodeCheck postcodeCheck = new PostcodeCheck(indexDirectory);
+    IndexSettings settings = new IndexSettings();
+    settings.setCompactSchema(true);
+    postcodeCheck.setIndexSettings(settings);
+    postcodeCheck.loadAddresses(testAddresses());
+
+    try (FSDirectory directory = FSDirectory.open(indexDirectory); DirectoryReader reader = DirectoryReader.open(directory)) {
+      assertNull(reader.document(0).get("complete"));
+      assertNull(reader.document(0).get("minnumber"));
+    }
+    Address found = postcodeCheck.getAddress(new Address(null, "Deurne", null, "Milhezerweg 56", null, null));
+    assertEquals("5751AB", found.getPostcode());
+    assertEquals(MatchSource.INDEX, found.getMatchSource());
+    assertEquals(MatchSource.POSTCODE_TABLE, postcodeCheck.getAddress(new Address("1011 ad", null, null, null, "17", null)).getMatchSource());
+    // beyond every range of the street, only the odd/even type is checked
+    assertEquals("Milhezerweg", postcodeCheck.getAddress(new Address(null, "Deurne", null, "Milhezerweg 101", null, null)).getStreet());
+    assertEquals("Dorpstraat", postcodeCheck.getAddress(new Address(null, null, null, null, null, null, "Dorpstraat 28 te Amsterdam")).getStreet());
+
+    // switching the schema rebuilds the persisted index
+    long generation = lastCommitGeneration(indexDirectory);
+    PostcodeCheck reopened = new PostcodeCheck(indexDirectory);
+    reopened.loadAddresses(testAddresses());
+    assertNotEquals(generation, lastCommitGeneration(indexDirectory));
+    assertEquals("5751AB", reopened.getAddress(new Address(null, "Deurne", null, "Milhezerweg 56", null, null)).getPostcode());
+  }
+
+  @Test
+  public void testCompactSchemaNumberOutsideStreetRange() throws IOException, ParseException {
+    PostcodeCheck postcodeCheck = new PostcodeCheck();
+    postcodeCheck.getIndexSettings().setCompactSchema(true);
+    postcodeCheck.loadAddresses(testAddresses());
+
+    // other streets and cities hold these numbers, the street in the input does not
+    assertEquals("5751AC", postcodeCheck.getAddress(new Address(null, "Deurne", null, "Dorpstraat 30", null, null)).getPostcode());
+    assertEquals("5751AC", postcodeCheck.getAddress(new Address(null, "Deurne", null, "Dorpstraat 50", null, null)).getPostcode());
+    assertEquals("1011AD", postcodeCheck.getAddress(new Address(null, "Amsterdam", null, "Dorpstraat 99", null, null)).getPostcode());
+  }
+
+  @Test
+  public void testCompactSchemaRetryCandidates() throws IOException, ParseException {
+    PostcodeCheck postcodeCheck = new PostcodeCheck();
+    postcodeCheck.getIndexSettings().setCompactSchema(true);
+    postcodeCheck.loadAddresses(testAddresses());
+    Address input = new Address(null, "Deurne", null, "Dorpstraat 30", null, null);
+
+    // most documents holding 30 pass both the range and the odd/even filter, only those of the chosen search count
+    List<ScoredAddress> candidates = postcodeCheck.searchCandidates(input);
+    assertEquals("5751AC", candidates.get(0).getAddress().getPostcode());
+    Set<String> postcodes = new HashSet<>();
+    for (int i = 0; i < candidates.size(); i++) {
+      assertTrue(postcodes.add(candidates.get(i).getAddress().getPostcode()));
+      assertTrue(i == 0 || candidates.get(i - 1).getScore() >= candidates.get(i).getScore());
+    }
+
+    postcodeCheck.setQueryCascade(new QueryCascade());
+    assertEquals("5751AC", postcodeCheck.getAddress(input).getPostcode());
+  }
+
+  @Test
+  public void testApplyDelta() throws IOException, ParseException {
+    File indexDirectory = folder.newFolder("index");
+    PostcodeCheck postcodeCheck = new PostcodeCheck(indexDirectory);
+    postcodeCheck.loadAddresses(testAddresses());
+
+    File delta = folder.newFile("delta.csv");
+    try (PrintWriter writer = new PrintWriter(delta, "UTF-8")) {
+      writer.println("\"postcode\";\"city\";\"municipality\";\"street\";\"numbertype\";\"minnumber\";\"maxnumber\";\"action\"");
+      writer.println("\"3511AB\";\"Utrecht\";\"Utrecht\";\"Lange Viestraat\";\"mixed\";\"1\";\"40\";\"change\"");
+      writer.println("\"1071AB\";\"\";\"\";\"\";\"\";\"1\";\"100\";\"delete\"");
+      writer.println("\"9711AA\";\"Groningen\";\"Groningen\";\"Grote Markt\";\"mixed\";\"1\";\"50\";\"add\"");
+    }
+    postcodeCheck.applyDelta(delta.getPath());
+
+    assertEquals("Lange Viestraat", postcodeCheck.getAddress(new Address("3511AB", null, null, null, "12", null)).getStreet());
+    assertEquals("9711AA", postcodeCheck.getAddress(new Address(null, "Groningen", null, "Grote Markt 3", null, null)).getPostcode());
+    Address deleted = postcodeCheck.getAddress(new Address("1071AB", null, null, null, "5", null));
+    assertTrue(deleted == null || !"1071AB".equals(deleted.getPostcode()));
+    try (FSDirectory directory = FSDirectory.open(indexDirectory); DirectoryReader reader = DirectoryReader.open(directory)) {
+      assertEquals(11, reader.numDocs());
+    }
+
+    // applying the same file again, or reloading the unchanged source, keeps the index as it is
+    long generation = lastCommitGeneration(indexDirectory);
+    postcodeCheck.applyDelta(delta.getPath());
+    PostcodeCheck reopened = new PostcodeCheck(indexDirectory);
+    reopened.loadAddresses(testAddresses());
+    assertEquals(generation, lastCommitGeneration(indexDirectory));
+    assertEquals("Lange Viestraat", reopened.getAddress(new Address("3511AB", null, null, null, "12", null)).getStreet());
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testApplyDeltaNeedsIndex() throws IOException {
+    new PostcodeCheck(folder.newFolder("index")).applyDelta(testAddresses());
+  }
+
+  @Test
+  public void testAddressTable() throws IOException, ParseException {
+    PostcodeCheck storedFields = new PostcodeCheck();
+    storedFields.loadAddresses(testAddresses());
+    PostcodeCheck addressTable = new PostcodeCheck(folder.newFolder("index"));
+    addressTable.getIndexSettings().setAddressTable(true);
+    addressTable.loadAddresses(testAddresses());
+
+    Address[] inputs = {
+        new Address(null, "Deurne", null, "Milhezerweg 55b", null, null),
+        new Address(null, "deurne", null, "Milhezrweg 56", null, null),
+        new Address(null, null, null, "Kerkstraat", "3", null),
+        new Address("1011 ad", null, null, null, "17", null),
+        new Address(null, null, null, null, null, null, "Dorpstraat 28 te Amsterdam"),
+        new Address(null, "Zzyxw", null, "Qwxzq", null, null)};
+    for (Address input : inputs) {
+      assertEquals(storedFields.getAddress(input), addressTable.getAddress(input));
+    }
+
+    // the table follows the index after a change
+    File delta = folder.newFile("delta.csv");
+    try (PrintWriter writer = new PrintWriter(delta, "UTF-8")) {
+      writer.println("\"postcode\";\"city\";\"municipality\";\"street\";\"numbertype\";\"minnumber\";\"maxnumber\";\"action\"");
+      writer.println("\"9711AA\";\"Groningen\";\"Groningen\";\"Grote Markt\";\"mixed\";\"1\";\"50\";\"add\"");
+    }
+    addressTable.applyDelta(delta.getPath());
+    Address found = addressTable.getAddress(new Address(null, "Groningen", null, "Grote Markt 3", null, null));
+    assertEquals("9711AA", found.getPostcode());
+    assertEquals("Groningen", found.getMunicipality());
+  }
+
+  @Test
+  public void testSynonyms() throws IOException, ParseException {
+    File indexDirectory = folder.newFolder("index");
+    PostcodeCheck postcodeCheck = new PostcodeCheck(indexDirectory);
+    postcodeCheck.loadAddresses(testAddresses());
+    assertEquals("5211AC", postcodeCheck.getAddress(new Address(null, "Den Bosch", null, "Kerkstr. 4", null, null)).getPostcode());
+    assertEquals("5211AB", postcodeCheck.getAddress(new Address(null, null, null, null, null, null, "Kerkstr. 3 te 's-Hertogenbosch")).getPostcode());
+
+    AddressSynonyms bundled = AddressSynonyms.current();
+    try {
+      AddressSynonyms.setCurrent(AddressSynonyms.load(new StringReader("mokum => Amsterdam"),
+          new StringReader("van baerlestraat => Baerlestraat")));
+      // the loaded index keeps its rules until the next load, also for changes applied to it
+      File delta = folder.newFile("delta.csv");
+      try (PrintWriter writer = new PrintWriter(delta, "UTF-8")) {
+        writer.println("\"postcode\";\"city\";\"municipality\";\"street\";\"numbertype\";\"minnumber\";\"maxnumber\";\"action\"");
+        writer.println("\"1071AC\";\"Amsterdam\";\"Amsterdam\";\"Van Baerlestraat\";\"mixed\";\"101\";\"200\";\"add\"");
+      }
+      postcodeCheck.applyDelta(delta.getPath());
+      try (FSDirectory directory = FSDirectory.open(indexDirectory); DirectoryReader reader = DirectoryReader.open(directory)) {
+        assertFalse(MultiFields.getTerms(reader, "street").iterator(null).seekExact(new BytesRef("baerlestraat")));
+      }
+
+      // other rules rebuild the index, with the indexed terms rewritten but the stored names kept
+      long generation = lastCommitGeneration(indexDirectory);
+      postcodeCheck.loadAddresses(testAddresses());
+      assertNotEquals(generation, lastCommitGeneration(indexDirectory));
+      try (FSDirectory directory = FSDirectory.open(indexDirectory); DirectoryReader reader = DirectoryReader.open(directory)) {
+        assertTrue(MultiFields.getTerms(reader, "street").iterator(null).seekExact(new BytesRef("baerlestraat")));
+      }
+      Address found = postcodeCheck.getAddress(new Address(null, "Mokum", null, "Van Baerlestraat 5", null, null));
+      assertEquals("1071AB", found.getPostcode());
+      assertEquals("Van Baerlestraat", found.getStreet());
+    } finally {
+      AddressSynonyms.setCurrent(bundled);
+    }
+  }
+
+  @Test
+  public void testQueryCascade() throws IOException, ParseException {
+    PostcodeCheck postcodeCheck = new PostcodeCheck();
+    postcodeCheck.loadAddresses(testAddresses());
+    QueryCascade cascade = new QueryCascade();
+    // only an exact or single candidate ends the cascade early
+    cascade.setMinScoreGap(2F);
+    postcodeCheck.setQueryCascade(cascade);
+    PostcodeCheckMetrics metrics = new PostcodeCheckMetrics();
+    postcodeCheck.setListener(metrics);
+
+    Address found = postcodeCheck.getAddress(new Address(null, "Deurne", null, "Milhezerweg 55", null, null));
+    assertEquals("5751AA", found.getPostcode());
+    assertEquals(MatchSource.EXACT, found.getMatchSource());
+
+    found = postcodeCheck.getAddress(new Address(null, "Deurne", null, "Milhezerwg 55", null, null));
+    assertEquals("5751AA", found.getPostcode());
+    assertEquals("Milhezerweg", found.getStreet());
+    assertEquals(MatchSource.FUZZY, found.getMatchSource());
+
+    found = postcodeCheck.getAddress(new Address(null, null, null, null, null, null, "Dorpstraat 28 te Amsterdam"));
+    assertEquals("1011AC", found.getPostcode());
+    assertEquals(MatchSource.EXACT, found.getMatchSource());
+
+    assertEquals(Long.valueOf(2), metrics.getLookupsBySource().get("EXACT"));
+    assertEquals(Long.valueOf(1), metrics.getLookupsBySource().get("FUZZY"));
+  }
+
+  private long lastCommitGeneration(File indexDirectory) throws IOException {
+    try (FSDirectory directory = FSDirectory.open(indexDirectory)) {
+      return SegmentInfos.getLastCommitGeneration(directory);
+    }
+  }
+}
@@ -0,0 +1,23 @@
+package net.weverwijk.address.cleaner;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class PostcodesTest {
+
+  @Test
+  public void testPackAndUnpack() {
+    assertEquals("1011AB", Postcodes.unpack(Postcodes.pack("1011AB")));
+    assertEquals("9999ZZ", Postcodes.unpack(Postcodes.pack("9999zz")));
+    assertEquals(Postcodes.pack("5211AB"), Postcodes.pack(" 5211 ab"));
+  }
+
+  @Test
+  public void testInvalidPostcodes() {
+    String[] invalid = {null, "", "1011", "1011A", "1011ABC", "0123AB", "10111AB", "AB1011", "1011A1", "1011\u00c4B"};
+    for (String postcode : invalid) {
+      assertEquals(postcode, Postcodes.INVALID, Postcodes.pack(postcode));
+    }
+  }
+}
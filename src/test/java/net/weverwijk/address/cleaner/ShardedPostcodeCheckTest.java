@@ -0,0 +1,97 @@
+package net.weverwijk.address.cleaner;
+
+import org.apache.lucene.queryparser.classic.ParseException;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.rmi.registry.Registry;
+import java.rmi.server.UnicastRemoteObject;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class ShardedPostcodeCheckTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void testShardOf() {
+    assertEquals(0, ShardedPostcodeCheck.shardOf("1011AB", 3));
+    assertEquals(1, ShardedPostcodeCheck.shardOf("5211 ab", 3));
+    assertEquals(2, ShardedPostcodeCheck.shardOf("9999ZZ", 3));
+    assertEquals(-1, ShardedPostcodeCheck.shardOf("Deurne", 3));
+    assertEquals(-1, ShardedPostcodeCheck.shardOf(null, 3));
+  }
+
+  @Test
+  public void testInJvmShards() throws IOException, ParseException {
+    try (ShardedPostcodeCheck postcodeCheck = ShardedPostcodeCheck.load(PostcodeCheckTest.testAddresses(), 3, folder.getRoot())) {
+      assertLookups(postcodeCheck);
+    }
+  }
+
+  @Test
+  public void testRemoteShards() throws IOException, ParseException {
+    int port;
+    try (ServerSocket socket = new ServerSocket(0)) {
+      port = socket.getLocalPort();
+    }
+    Registry registry = AddressShardServer.createRegistry(port);
+    List<PostcodeCheck> postcodeChecks = new ArrayList<>();
+    List<PostcodeCheckShard> exported = new ArrayList<>();
+    List<AddressShard> stubs = new ArrayList<>();
+    try {
+      for (File shardFile : ShardedPostcodeCheck.splitCsv(PostcodeCheckTest.testAddresses(), 3, folder.getRoot())) {
+        PostcodeCheck postcodeCheck = new PostcodeCheck();
+        postcodeChecks.add(postcodeCheck);
+        postcodeCheck.loadAddresses(shardFile.getPath());
+        PostcodeCheckShard shard = new PostcodeCheckShard(postcodeCheck);
+        AddressShardServer.export(shard, registry, "shard-" + exported.size());
+        exported.add(shard);
+        stubs.add(AddressShardServer.connect(port, "shard-" + stubs.size()));
+      }
+      try (ShardedPostcodeCheck postcodeCheck = new ShardedPostcodeCheck(stubs)) {
+        assertLookups(postcodeCheck);
+      }
+    } finally {
+      for (PostcodeCheckShard shard : exported) {
+        UnicastRemoteObject.unexportObject(shard, true);
+      }
+      UnicastRemoteObject.unexportObject(registry, true);
+      for (PostcodeCheck postcodeCheck : postcodeChecks) {
+        postcodeCheck.close();
+      }
+    }
+  }
+
+  private void assertLookups(ShardedPostcodeCheck postcodeCheck) throws IOException, ParseException {
+    // routed to one shard
+    Address found = postcodeCheck.getAddress(new Address("5211AC", null, null, null, "4", null));
+    assertEquals("Kerkstraat", found.getStreet());
+    assertEquals(MatchSource.POSTCODE_TABLE, found.getMatchSource());
+    assertEquals("Vredenburg", postcodeCheck.getAddress(new Address("3511AB", null, null, null, "12", null)).getStreet());
+
+    // searched on all shards
+    found = postcodeCheck.getAddress(new Address(null, "Deurne", null, "Milhezerweg 55b", null, null));
+    assertEquals("5751AA", found.getPostcode());
+    assertEquals("55", found.getHouseNumber());
+    assertEquals("b", found.getHouseNumberAffix());
+    assertEquals(MatchSource.INDEX, found.getMatchSource());
+    assertEquals("5211AC", postcodeCheck.getAddress(new Address(null, "'s-Hertogenbosch", null, "Kerkstraat 4", null, null)).getPostcode());
+    found = postcodeCheck.getAddress(new Address(null, null, null, null, null, null, "Dorpstraat 28 te Amsterdam"));
+    assertEquals("1011AC", found.getPostcode());
+    assertEquals("28", found.getHouseNumber());
+
+    // without a house number the postcode is unknown
+    found = postcodeCheck.getAddress(new Address(null, "Utrecht", null, "Oudegracht", null, null));
+    assertEquals("Oudegracht", found.getStreet());
+    assertNull(found.getPostcode());
+  }
+}
@@ -0,0 +1,67 @@
+package net.weverwijk.address.cleaner;
+
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.store.FSDirectory;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class StreetDictionaryTest {
+
+  @ClassRule
+  public static TemporaryFolder folder = new TemporaryFolder();
+
+  private static StreetDictionary dictionary;
+
+  @BeforeClass
+  public static void beforeOnce() throws IOException {
+    File indexDirectory = folder.newFolder("index");
+    try (PostcodeCheck postcodeCheck = new PostcodeCheck(indexDirectory)) {
+      postcodeCheck.loadAddresses(PostcodeCheckTest.testAddresses());
+    }
+    try (DirectoryReader reader = DirectoryReader.open(FSDirectory.open(indexDirectory))) {
+      dictionary = StreetDictionary.build(reader);
+    }
+  }
+
+  @Test
+  public void testMultiWordStreetWithNumberAndCity() {
+    DescriptionMatch match = dictionary.find("bezorgen op Van Baerlestraat 12 Amsterdam");
+    assertEquals("van baerlestraat", match.getStreet());
+    assertEquals("amsterdam", match.getCity());
+    assertEquals("12", match.getHouseNumber());
+    assertEquals("", match.getHouseNumberAffix());
+  }
+
+  @Test
+  public void testTypoInStreet() {
+    DescriptionMatch match = dictionary.find("Milhezerwg 55b te Deurne.");
+    assertEquals("milhezerweg", match.getStreet());
+    assertEquals("deurne", match.getCity());
+    assertEquals("55", match.getHouseNumber());
+    assertEquals("b", match.getHouseNumberAffix());
+  }
+
+  @Test
+  public void testNothingFound() {
+    assertNull(dictionary.find("geen adres bekend"));
+  }
+
+  @Test
+  public void testWithinOneEdit() {
+    assertTrue(StreetDictionary.withinOneEdit("dorpstraat", "dorpstrat"));
+    assertTrue(StreetDictionary.withinOneEdit("dorpstraat", "dorpstraaat"));
+    assertTrue(StreetDictionary.withinOneEdit("dorpstraat", "dorpstreat"));
+    assertFalse(StreetDictionary.withinOneEdit("dorpstraat", "dropstraat"));
+    assertFalse(StreetDictionary.withinOneEdit("dorpstraat", "dorpstr"));
+  }
+}